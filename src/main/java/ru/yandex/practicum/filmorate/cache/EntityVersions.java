@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.AfterCommit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии фильмов и справочников для ETag и Last-Modified. Версия — отметка монотонных часов
+ * в миллисекундах (не меньше времени запуска и строго растёт), поэтому она же служит временем
+ * изменения. Не менявшиеся с запуска сущности имеют версию запуска, а ETag содержит время запуска:
+ * после перезапуска старые ETag не совпадают, и клиенты перечитывают данные.
+ * Last-Modified в HTTP точен до секунды, поэтому он отдаётся округлённым вверх до секунды и только
+ * когда эта секунда уже не может достаться следующему изменению: иначе изменение в ту же секунду
+ * дало бы тот же Last-Modified, и клиент с одним If-Modified-Since получил бы устаревший 304.
+ * В транзакции версия повышается после фиксации: иначе параллельное чтение отдало бы старую
+ * строку с новым ETag, и клиент держал бы её до следующего изменения.
+ */
+@Component
+public class EntityVersions {
+    private final long epoch = System.currentTimeMillis();
+    private final String etagPrefix = "\"" + Long.toString(epoch, Character.MAX_RADIX) + ".";
+    private final AtomicLong clock = new AtomicLong(epoch);
+    // версии фильмов, изменённых после запуска и после последнего filmsChanged
+    private final Map<Long, Long> films = new ConcurrentHashMap<>();
+    // нижняя граница версии всех фильмов: сверка лайков, перезагрузка справочников
+    private volatile long allFilms = epoch;
+    private volatile long genres = epoch;
+    private volatile long mpa = epoch;
+
+    public long film(long id) {
+        return Math.max(films.getOrDefault(id, epoch), allFilms);
+    }
+
+    public long genres() {
+        return genres;
+    }
+
+    public long mpa() {
+        return mpa;
+    }
+
+    public String etag(long version) {
+        return etagPrefix + Long.toString(version, Character.MAX_RADIX) + "\"";
+    }
+
+    /**
+     * Last-Modified для версии: целая секунда не раньше неё, или -1, пока следующее изменение
+     * ещё может получить версию в пределах этой секунды (тогда ответ сверяется только по ETag).
+     */
+    public long lastModified(long version) {
+        long second = Math.ceilDiv(version, 1000L) * 1000;
+        long earliestNext = Math.max(clock.get() + 1, System.currentTimeMillis());
+        return second < earliestNext ? second : -1;
+    }
+
+    public void filmChanged(long id) {
+        AfterCommit.run(() -> films.put(id, next()));
+    }
+
+    public void filmsChanged() {
+        AfterCommit.run(() -> {
+            allFilms = next();
+            films.clear();
+        });
+    }
+
+    // Жанры и MPA входят в представление фильма, поэтому меняют и версии фильмов
+    public void genresChanged() {
+        AfterCommit.run(() -> {
+            genres = next();
+            allFilms = genres;
+        });
+    }
+
+    public void mpaChanged() {
+        AfterCommit.run(() -> {
+            mpa = next();
+            allFilms = mpa;
+        });
+    }
+
+    private long next() {
+        return clock.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+    }
+}
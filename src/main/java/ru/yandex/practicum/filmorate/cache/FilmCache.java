@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.dal.AfterCommit;
+import ru.yandex.practicum.filmorate.dal.routing.RoutingContext;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Кэш фильмов перед FilmStorage.getFilmById и findByIds: Caffeine с вытеснением W-TinyLFU,
+ * ограничением по числу записей и времени жизни. Одновременные промахи по одному фильму
+ * ждут одной загрузки. Наружу отдаются копии, потому что сервис дописывает в фильм отложенные лайки.
+ * Запись сбрасывается сразу и ещё раз после фиксации транзакции: между ними параллельное чтение
+ * могло загрузить старую строку. Внутри транзакции кэш не используется — там видны свои изменения.
+ * Пакетная загрузка идёт вне блокировок по ключам, поэтому её результат кладётся в кэш, только
+ * если версия фильма в {@link EntityVersions} не сменилась с начала загрузки.
+ * Промахи читаются из основной базы, даже когда вызов идёт на реплику: отстающая реплика
+ * вернула бы строку до записи, которая уже сбросила кэш, и её получали бы все клиенты
+ * до истечения expire-after-write.
+ */
+@Slf4j
+@Component
+public class FilmCache {
+    private final EntityVersions versions;
+    private final boolean enabled;
+    private final Cache<Long, Film> cache;
+
+    public FilmCache(EntityVersions versions,
+                     @Value("${filmorate.films.cache.enabled:true}") boolean enabled,
+                     @Value("${filmorate.films.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${filmorate.films.cache.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.versions = versions;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        if (enabled) {
+            log.info("Кэш фильмов: до {} записей на {} с", maximumSize, expireAfterWrite.toSeconds());
+        }
+    }
+
+    public Optional<Film> get(long id, Function<Long, Optional<Film>> loader) {
+        if (bypass()) {
+            return loader.apply(id);
+        }
+        return Optional.ofNullable(cache.get(id, key -> RoutingContext.onPrimary(() -> loader.apply(key).orElse(null))))
+                .map(FilmCache::copy);
+    }
+
+    // Фильмы в порядке ids, отсутствующие пропускаются; промахи загружаются одним вызовом loader
+    public List<Film> getAll(List<Long> ids, Function<Collection<? extends Long>, Map<Long, Film>> loader) {
+        if (bypass()) {
+            Map<Long, Film> loaded = loader.apply(ids);
+            return ids.stream().map(loaded::get).filter(Objects::nonNull).toList();
+        }
+        Map<Long, Film> cached = new HashMap<>(cache.getAllPresent(ids));
+        Map<Long, Long> missed = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (!cached.containsKey(id)) {
+                missed.putIfAbsent(id, versions.film(id));
+            }
+        }
+        if (!missed.isEmpty()) {
+            RoutingContext.onPrimary(() -> loader.apply(missed.keySet())).forEach((id, film) -> {
+                Long version = missed.get(id);
+                // версия повышается до сброса записи после фиксации: либо проверка увидит новую
+                // версию, либо сброс уберёт уже положенную запись
+                if (version != null) {
+                    cache.asMap().computeIfAbsent(id, key -> versions.film(key) == version ? film : null);
+                }
+                cached.put(id, film);
+            });
+        }
+        List<Film> films = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Film film = cached.get(id);
+            if (film != null) {
+                films.add(copy(film));
+            }
+        }
+        return films;
+    }
+
+    public void invalidate(long id) {
+        cache.invalidate(id);
+        AfterCommit.run(() -> cache.invalidate(id));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        AfterCommit.run(cache::invalidateAll);
+    }
+
+    public Cache<Long, Film> cache() {
+        return cache;
+    }
+
+    private boolean bypass() {
+        return !enabled || TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private static Film copy(Film film) {
+        return film.toBuilder()
+                .genres(film.getGenres() == null ? null : new LinkedHashSet<>(film.getGenres()))
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.yandex.practicum.filmorate.model.ErrorResponse;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничивает число одновременно обрабатываемых запросов размером пула соединений,
+ * умноженным на requests-per-connection. С виртуальными потоками Tomcat больше не ограничивает
+ * число запросов пулом потоков, и без этого все они выстраиваются в очередь за соединением
+ * Hikari до connection-timeout. Здесь лишние запросы ждут не дольше acquire-timeout
+ * и получают 503 с Retry-After. По умолчанию включён вместе с виртуальными потоками.
+ * Асинхронный запрос держит разрешение до завершения, а не до выхода из фильтра.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    // размер пула Hikari по умолчанию
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private final boolean enabled;
+    private final long acquireTimeoutNanos;
+    private final int limit;
+    private final Semaphore permits;
+    private final ObjectMapper objectMapper;
+    private final Counter rejected;
+
+    public ConcurrencyLimitFilter(DataSource dataSource,
+                                  ObjectMapper objectMapper,
+                                  MeterRegistry registry,
+                                  @Value("${filmorate.concurrency.limit.enabled:false}") boolean enabled,
+                                  @Value("${filmorate.concurrency.limit.requests-per-connection:4}") int perConnection,
+                                  @Value("${filmorate.concurrency.limit.acquire-timeout:PT1S}") Duration acquireTimeout) {
+        this.enabled = enabled;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.limit = poolSize(dataSource) * perConnection;
+        this.permits = new Semaphore(limit, true);
+        this.objectMapper = objectMapper;
+        this.rejected = Counter.builder("filmorate.concurrency.rejected")
+                .description("Запросы, отклонённые ограничителем одновременных запросов")
+                .register(registry);
+        Gauge.builder("filmorate.concurrency.in.flight", permits, semaphore -> limit - semaphore.availablePermits())
+                .description("Запросы, обрабатываемые сейчас")
+                .register(registry);
+        if (enabled) {
+            log.info("Ограничение одновременных запросов: {}", limit);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            log.warn("Запрос {} {} отклонён: обрабатывается {} запросов", request.getMethod(),
+                    request.getRequestURI(), limit);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            objectMapper.writeValue(response.getWriter(),
+                    new ErrorResponse("Сервер перегружен, повторите запрос позже"));
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                // StreamingResponseBody (GET /films, GET /users) пишет ответ после выхода из фильтра:
+                // разрешение держится до завершения асинхронной обработки
+                request.getAsyncContext().addListener(new ReleaseOnCompletion());
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permits.release();
+            }
+        }
+    }
+
+    // Отпускает разрешение один раз: после onError или onTimeout контейнер вызывает и onComplete
+    private final class ReleaseOnCompletion implements AsyncListener {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                // до запуска пула не заданный размер равен -1, значение по умолчанию Hikari подставит позже
+                int size = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+                return size > 0 ? size : DEFAULT_POOL_SIZE;
+            }
+        } catch (SQLException e) {
+            log.warn("Не удалось определить размер пула соединений", e);
+        }
+        return DEFAULT_POOL_SIZE;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Журнал закреплений виртуальных потоков: событие JFR jdk.VirtualThreadPinned возникает,
+ * когда виртуальный поток блокируется внутри synchronized или нативного кадра и держит
+ * поток-носитель. Так видны synchronized-участки драйвера JDBC и библиотек под нагрузкой.
+ * Пишутся закрепления дольше pinning-threshold с верхними кадрами стека.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+    private static final int FRAMES = 8;
+
+    private final Duration threshold;
+    private final Counter pinned;
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry registry,
+                                       @Value("${filmorate.virtual-threads.pinning-threshold:PT0.02S}")
+                                       Duration threshold) {
+        this.threshold = threshold;
+        this.pinned = Counter.builder("filmorate.virtual.threads.pinned")
+                .description("Закрепления виртуальных потоков дольше порога")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::report);
+        stream.startAsync();
+        log.info("Отслеживаются закрепления виртуальных потоков дольше {} мс", threshold.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        stream.close();
+    }
+
+    private void report(RecordedEvent event) {
+        pinned.increment();
+        List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+        String stack = frames.stream()
+                .limit(FRAMES)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n\tat "));
+        log.warn("Виртуальный поток закреплён на {} мс:\n\tat {}", event.getDuration().toMillis(), stack);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.BulkResult;
+import ru.yandex.practicum.filmorate.model.BulkSummary;
+import ru.yandex.practicum.filmorate.service.BulkImportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Массовый импорт в формате NDJSON. Ответ тоже NDJSON: строка результата
+ * на каждую строку запроса и последней строкой — итог импорта.
+ */
+@RestController
+@RequiredArgsConstructor
+public class BulkImportController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final BulkImportService service;
+    private final ObjectMapper objectMapper;
+
+    @PostMapping("/films/bulk")
+    public void importFilms(InputStream body, HttpServletResponse response) throws IOException {
+        respond(response, results -> service.importFilms(body, results));
+    }
+
+    @PostMapping("/users/bulk")
+    public void importUsers(InputStream body, HttpServletResponse response) throws IOException {
+        respond(response, results -> service.importUsers(body, results));
+    }
+
+    @PostMapping("/films/likes/bulk")
+    public void importLikes(InputStream body, HttpServletResponse response) throws IOException {
+        respond(response, results -> service.importLikes(body, results));
+    }
+
+    @PostMapping("/users/friends/bulk")
+    public void importFriendships(InputStream body, HttpServletResponse response) throws IOException {
+        respond(response, results -> service.importFriendships(body, results));
+    }
+
+    private void respond(HttpServletResponse response,
+                         Function<Consumer<BulkResult>, BulkSummary> importer) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (SequenceWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            BulkSummary summary = importer.apply(result -> write(writer, result));
+            writer.write(summary);
+        }
+    }
+
+    private void write(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
+
+/**
+ * Условные GET по версиям из {@link EntityVersions}: ответ получает ETag, Last-Modified
+ * ({@link EntityVersions#lastModified}) и Cache-Control: no-cache (хранить можно, но перед
+ * использованием сверять версию), а запрос с совпавшим If-None-Match или If-Modified-Since — 304 до обращения к сервису, БД и Jackson.
+ * Версия берётся до чтения данных: при изменении между ними клиент получит новые данные со
+ * старым ETag и просто перечитает их при следующей проверке.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConditionalGet {
+    private final EntityVersions versions;
+
+    public boolean film(NativeWebRequest request, long id) {
+        return notModified(request, versions.film(id));
+    }
+
+    public boolean genres(NativeWebRequest request) {
+        return notModified(request, versions.genres());
+    }
+
+    public boolean mpa(NativeWebRequest request) {
+        return notModified(request, versions.mpa());
+    }
+
+    private boolean notModified(NativeWebRequest request, long version) {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        }
+        return request.checkNotModified(versions.etag(version), versions.lastModified(version));
+    }
+}
@@ -2,82 +2,83 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.validator.PageValidator;
 
 import java.util.Collection;
 
-@Slf4j
 @RestController
 @RequestMapping("/films")
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService service;
+    private final JsonArrayStreamer streamer;
+    private final ConditionalGet conditionalGet;
 
     @GetMapping
-    public Collection<Film> findAll() {
-        log.info("Запрос на получение всех фильмов");
-        Collection<Film> films = service.findAll();
-        log.info("Возвращено {} фильмов", films.size());
-        return films;
+    public ResponseEntity<StreamingResponseBody> findAll(@RequestParam(required = false) Long after) {
+        PageValidator.requireLimit(after);
+        return streamer.stream(service::streamAll);
+    }
+
+    @GetMapping(params = "limit")
+    public Collection<Film> findPage(@RequestParam(required = false) Long after,
+                                     @RequestParam int limit) {
+        return service.findPage(after, limit);
     }
 
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable Long id) {
-        log.info("Запрос фильма с ID: {}", id);
-        Film film = service.getFilmById(id);
-        log.info("Найден фильм: {}", film);
-        return film;
+    public Film getFilmById(@PathVariable Long id, NativeWebRequest request) {
+        if (conditionalGet.film(request, id)) {
+            return null;
+        }
+        return service.getFilmById(id);
     }
 
     @GetMapping("/popular")
     public Collection<Film> getPopularFilms(
-            @RequestParam(defaultValue = "10", required = false) int count
+            @RequestParam(defaultValue = "10", required = false) int count,
+            @RequestParam(required = false) Integer genreId,
+            @RequestParam(required = false) Integer year
     ) {
-        log.info("Запрос {} популярных фильмов", count);
-        Collection<Film> films = service.getPopularFilms(count);
-        log.info("Возвращено {} популярных фильмов", films.size());
-        return films;
+        return service.getPopularFilms(count, genreId, year);
+    }
+
+    @GetMapping("/search")
+    public Collection<Film> search(@RequestParam String q,
+                                   @RequestParam(defaultValue = "10", required = false) int limit) {
+        return service.search(q, limit);
     }
 
     @PostMapping
     public Film create(@Valid @RequestBody Film film) {
-        log.info("Запрос на создание фильма: {}", film);
-        Film createdFilm = service.create(film);
-        log.info("Фильм создан: {}", createdFilm);
-        return createdFilm;
+        return service.create(film);
     }
 
     @PutMapping
     public Film update(@Valid @RequestBody Film newFilm) {
-        log.info("Запрос на обновление фильма: {}", newFilm);
-        Film updatedFilm = service.update(newFilm);
-        log.info("Фильм обновлен: {}", updatedFilm);
-        return updatedFilm;
+        return service.update(newFilm);
     }
 
     @PutMapping(("/{id}/like/{userId}"))
     public void addLike(@PathVariable Long id,
                         @PathVariable Long userId) {
-        log.info("Запрос на добавление лайка фильму {} от пользователя {}", id, userId);
         service.addLike(id, userId);
-        log.info("Лайк добавлен фильму {} от пользователя {}", id, userId);
     }
 
     @DeleteMapping("/{id}")
     public void delete(@PathVariable Long id) {
-        log.info("Запрос на удаление фильма с ID: {}", id);
         service.delete(id);
-        log.info("Фильм с ID {} удален", id);
     }
 
     @DeleteMapping("/{id}/like/{userId}")
     public void removeLike(@PathVariable Long id,
                            @PathVariable Long userId) {
-        log.info("Запрос на удаление лайка у фильма {} от пользователя {}", id, userId);
         service.removeLike(id, userId);
-        log.info("Лайк удален у фильма {} от пользователя {}", id, userId);
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
@@ -16,14 +17,21 @@ import java.util.Collection;
 @RequiredArgsConstructor
 public class GenreController {
     private final GenreService genreService;
+    private final ConditionalGet conditionalGet;
 
     @GetMapping
-    public Collection<Genre> getAllMpa() {
+    public Collection<Genre> getAllMpa(NativeWebRequest request) {
+        if (conditionalGet.genres(request)) {
+            return null;
+        }
         return genreService.getAllGenres();
     }
 
     @GetMapping("/{id}")
-    public Genre getGenreById(@PathVariable int id) {
+    public Genre getGenreById(@PathVariable int id, NativeWebRequest request) {
+        if (conditionalGet.genres(request)) {
+            return null;
+        }
         return genreService.getGenreById(id);
     }
 }
@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.service.MpaService;
 
@@ -16,14 +17,21 @@ import java.util.Collection;
 @RequiredArgsConstructor
 public class MpaController {
     private final MpaService mpaService;
+    private final ConditionalGet conditionalGet;
 
     @GetMapping
-    public Collection<MpaRating> getAllMpa() {
+    public Collection<MpaRating> getAllMpa(NativeWebRequest request) {
+        if (conditionalGet.mpa(request)) {
+            return null;
+        }
         return mpaService.getAllMpa();
     }
 
     @GetMapping("/{id}")
-    public MpaRating getMpaById(@PathVariable int id) {
+    public MpaRating getMpaById(@PathVariable int id, NativeWebRequest request) {
+        if (conditionalGet.mpa(request)) {
+            return null;
+        }
         return mpaService.getMpaById(id);
     }
 }
@@ -2,89 +2,89 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.validator.PageValidator;
 
 import java.util.Collection;
 
 @RestController
 @RequestMapping("/users")
-@Slf4j
 @RequiredArgsConstructor
 public class UserController {
     private final UserService service;
+    private final FilmService filmService;
+    private final JsonArrayStreamer streamer;
 
     @GetMapping
-    public Collection<User> findAll() {
-        log.info("Запрос на получение всех пользователей");
-        Collection<User> users = service.findAll();
-        log.info("Возвращено {} пользователей", users.size());
-        return users;
+    public ResponseEntity<StreamingResponseBody> findAll(@RequestParam(required = false) Long after) {
+        PageValidator.requireLimit(after);
+        return streamer.stream(service::streamAll);
+    }
+
+    @GetMapping(params = "limit")
+    public Collection<User> findPage(@RequestParam(required = false) Long after,
+                                     @RequestParam int limit) {
+        return service.findPage(after, limit);
     }
 
     @GetMapping("/{id}")
     public User getUserById(@PathVariable Long id) {
-        log.info("Запрос пользователя с ID: {}", id);
-        User user = service.getUserById(id);
-        log.info("Найден пользователь: {}", user);
-        return user;
+        return service.getUserById(id);
     }
 
     @GetMapping("/{id}/friends")
     public Collection<User> findAllFriend(@PathVariable Long id) {
-        log.info("Запрос списка друзей пользователя с ID: {}", id);
-        Collection<User> friends = service.findAllFriend(id);
-        log.info("Возвращено {} друзей пользователя ID {}", friends.size(), id);
-        return friends;
+        return service.findAllFriend(id);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
     public Collection<User> getCommonFriends(@PathVariable Long id,
                                              @PathVariable Long otherId) {
-        log.info("Запрос общих друзей пользователей ID {} и ID {}", id, otherId);
-        Collection<User> commonFriends = service.getCommonFriends(id, otherId);
-        log.info("Найдено {} общих друзей между пользователями {} и {}", commonFriends.size(), id, otherId);
-        return commonFriends;
+        return service.getCommonFriends(id, otherId);
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public Collection<User> getFriendSuggestions(@PathVariable Long id,
+                                                 @RequestParam(defaultValue = "10") int limit) {
+        return service.getFriendSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public Collection<Film> getRecommendations(@PathVariable Long id,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        return filmService.getRecommendations(id, limit);
     }
 
     @PostMapping
     public User create(@Valid @RequestBody User user) {
-        log.info("Запрос на создание пользователя: {}", user);
-        User createdUser = service.create(user);
-        log.info("Пользователь создан: {}", createdUser);
-        return createdUser;
+        return service.create(user);
     }
 
     @PutMapping
     public User update(@Valid @RequestBody User newUser) {
-        log.info("Запрос на обновление пользователя: {}", newUser);
-        User updatedUser = service.update(newUser);
-        log.info("Пользователь обновлен: {}", updatedUser);
-        return updatedUser;
+        return service.update(newUser);
     }
 
     @PutMapping("/{id}/friends/{friendId}")
     public void addFriend(@PathVariable Long id,
                           @PathVariable Long friendId) {
-        log.info("Запрос на добавление в друзья: пользователь {} добавляет пользователя {}", id, friendId);
         service.addFriend(id, friendId);
-        log.info("Пользователь {} добавлен в друзья к пользователю {}", friendId, id);
     }
 
     @DeleteMapping({"/{id}"})
     public void delete(@PathVariable Long id) {
-        log.info("Запрос на удаление пользователя с ID: {}", id);
         service.delete(id);
-        log.info("Пользователь с ID {} удален", id);
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
     public void deleteFriend(@PathVariable Long id,
                              @PathVariable Long friendId) {
-        log.info("Запрос на удаление из друзей: пользователь {} удаляет пользователя {}", id, friendId);
         service.deleteFriend(id, friendId);
-        log.info("Пользователь {} удален из друзей пользователя {}", friendId, id);
     }
 }
\ No newline at end of file
@@ -2,18 +2,23 @@ package ru.yandex.practicum.filmorate.dal;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.List;
 import java.util.Optional;
 
 @RequiredArgsConstructor
 public class BaseRepository<T> {
+    protected static final int STREAM_FETCH_SIZE = 500;
+
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
 
@@ -30,16 +35,38 @@ public class BaseRepository<T> {
         return jdbc.query(query, mapper, params);
     }
 
+    // Однонаправленный курсор с ограниченным fetch size: строки читаются порциями,
+    // а не материализуются в памяти целиком
+    protected <R> R stream(String query, ResultSetExtractor<R> extractor, Object... params) {
+        return jdbc.query(connection -> {
+            PreparedStatement ps = connection
+                    .prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            for (int idx = 0; idx < params.length; idx++) {
+                ps.setObject(idx + 1, params[idx]);
+            }
+            return ps;
+        }, extractor);
+    }
+
     public boolean delete(String query, long id) {
         int rowsDeleted = jdbc.update(query, id);
         return rowsDeleted > 0;
     }
 
     protected long insert(String query, Object... params) {
+        return insert(connection -> connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS), params);
+    }
+
+    // Для таблиц с вычисляемыми колонками: драйвер вернёт только перечисленные ключи
+    protected long insert(String query, String[] keyColumns, Object... params) {
+        return insert(connection -> connection.prepareStatement(query, keyColumns), params);
+    }
+
+    private long insert(ConnectionCallback<PreparedStatement> statement, Object... params) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(connection -> {
-            PreparedStatement ps = connection
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+            PreparedStatement ps = statement.doInConnection(connection);
             for (int idx = 0; idx < params.length; idx++) {
                 ps.setObject(idx + 1, params[idx]);
             }
@@ -54,6 +81,36 @@ public class BaseRepository<T> {
         }
     }
 
+    // Пакетная вставка одним batch-запросом, возвращает сгенерированные ключи в порядке строк
+    protected long[] insertAll(String query, String[] keyColumns, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return new long[0];
+        }
+        return jdbc.execute((ConnectionCallback<long[]>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(query, keyColumns)) {
+                for (Object[] row : rows) {
+                    for (int idx = 0; idx < row.length; idx++) {
+                        ps.setObject(idx + 1, row[idx]);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                long[] ids = new long[rows.size()];
+                int count = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next() && count < ids.length) {
+                        ids[count++] = keys.getLong(1);
+                    }
+                }
+                if (count != ids.length) {
+                    throw new InternalServerException("Не удалось сохранить данные");
+                }
+                return ids;
+            }
+        });
+    }
+
     protected void update(String query, Object... params) {
         int rowsUpdated = jdbc.update(query, params);
         if (rowsUpdated == 0) {
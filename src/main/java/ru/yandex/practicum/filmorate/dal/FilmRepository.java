@@ -1,54 +1,159 @@
 package ru.yandex.practicum.filmorate.dal;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.dal.mappers.FilmResultSetExtractor;
+import ru.yandex.practicum.filmorate.dal.routing.ReplicaRead;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.IdBitmap;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Repository
 public class FilmRepository extends BaseRepository<Film> implements FilmStorage {
 
     public static final String INSERT_FILM_GENRES_QUERY = "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)";
-    public static final String DELETE_FILM_GENRES_QUERY = "DELETE FROM film_genre WHERE film_id = ?";
-    private static final String FIND_ALL_QUERY = "SELECT f.*, r.name AS rating_name FROM films f JOIN mpa_rating r ON f.mpa_rating_id = r.mpa_rating_id";
+    public static final String DELETE_FILM_GENRES_QUERY = "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ANY(?)";
+    private static final String FIND_FILM_GENRE_IDS_QUERY = "SELECT genre_id FROM film_genre WHERE film_id = ?";
+    // Фильм вместе с жанрами и количеством лайков за один запрос, см. FilmResultSetExtractor
+    private static final String HYDRATED_FILMS =
+            "SELECT f.*, fg.genre_id " +
+                    "FROM (SELECT * FROM films f %s) f " +
+                    "LEFT JOIN film_genre fg ON fg.film_id = f.film_id " +
+                    "ORDER BY %s";
+    private static final String FIND_ALL_QUERY = HYDRATED_FILMS.formatted("", "f.film_id, fg.genre_id");
     private static final String FIND_BY_ID_QUERY =
-            "SELECT f.*, r.name AS rating_name " +
-                    "FROM films f " +
-                    "JOIN mpa_rating r ON f.mpa_rating_id = r.mpa_rating_id " +
-                    "WHERE f.film_id = ?";
+            HYDRATED_FILMS.formatted("WHERE f.film_id = ?", "f.film_id, fg.genre_id");
+    private static final String FIND_BY_IDS_QUERY =
+            HYDRATED_FILMS.formatted("WHERE f.film_id = ANY(?)", "f.film_id, fg.genre_id");
+    private static final String FIND_PAGE_QUERY =
+            HYDRATED_FILMS.formatted("WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?", "f.film_id, fg.genre_id");
+    private static final String[] KEY_COLUMNS = {"film_id"};
+    // Строки фильма с несколькими жанрами идут подряд
+    private static final String FIND_ALL_INDEXED_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, " +
+            "fg.genre_id FROM films f LEFT JOIN film_genre fg ON fg.film_id = f.film_id ORDER BY f.film_id, fg.genre_id";
+    private static final String DELETE_FILM_LIKES_QUERY = "DELETE FROM film_like WHERE film_id = ?";
+    private static final String DELETE_ALL_FILM_GENRES_QUERY = "DELETE FROM film_genre WHERE film_id = ?";
+    private static final String DELETE_QUERY = "DELETE FROM films WHERE film_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO films (name, description, release_date, duration, mpa_rating_id) " +
             "VALUES (?, ?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, mpa_rating_id = ? " +
             "WHERE film_id = ?";
+    // Лайк удалённого фильма или пользователя не вставляется (0 строк), а не нарушает внешний ключ:
+    // иначе одна такая строка валила бы весь пакет отложенной записи
     private static final String ADD_LIKE_SQL =
-            "INSERT INTO film_like (film_id, user_id) VALUES (?, ?)";
+            "INSERT INTO film_like (film_id, user_id) SELECT ?, ? " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM film_like WHERE film_id = ? AND user_id = ?) " +
+                    "AND EXISTS (SELECT 1 FROM films WHERE film_id = ?) " +
+                    "AND EXISTS (SELECT 1 FROM users WHERE user_id = ?)";
     private static final String DELETE_LIKE_SQL =
             "DELETE FROM film_like WHERE film_id = ? AND user_id = ?";
-    private static final String POPULAR_FILMS_SQL =
-            "SELECT f.*, COUNT(ul.user_id) AS likes_count " +
+    private static final String CHANGE_LIKES_COUNT_SQL =
+            "UPDATE films SET likes_count = likes_count + ? WHERE film_id = ?";
+    // Порядок первичного ключа film_like: лайки одного пользователя идут подряд
+    private static final String FIND_ALL_LIKES_SQL =
+            "SELECT user_id, film_id FROM film_like ORDER BY user_id, film_id";
+    // Один проход агрегации по film_like вместо двух коррелированных подзапросов на каждый фильм
+    private static final String RECONCILE_LIKES_COUNT_SQL =
+            "MERGE INTO films f " +
+                    "USING (SELECT fc.film_id, COUNT(l.user_id) AS likes " +
+                    "FROM films fc " +
+                    "LEFT JOIN film_like l ON l.film_id = fc.film_id " +
+                    "GROUP BY fc.film_id) c ON f.film_id = c.film_id " +
+                    "WHEN MATCHED AND f.likes_count <> c.likes THEN UPDATE SET likes_count = c.likes";
+    private static final String LIKES_COUNT_BY_FILM_SQL =
+            "SELECT f.film_id, COUNT(l.user_id) AS likes " +
                     "FROM films f " +
-                    "LEFT JOIN film_like ul ON f.film_id = ul.film_id " +
-                    "GROUP BY f.film_id " +
-                    "ORDER BY likes_count DESC " +
-                    "LIMIT ?";
-    private static final String GENRES_BY_FILM_ID_SQL = "SELECT g.genre_id, g.name FROM genres g JOIN film_genre fg ON g.genre_id = fg.genre_id WHERE fg.film_id = ? ORDER BY g.genre_id";
+                    "LEFT JOIN film_like l ON l.film_id = f.film_id " +
+                    "GROUP BY f.film_id";
+    // Диапазонное сканирование индекса films_likes_count_idx, без агрегации по film_like
+    private static final String POPULAR_FILMS_SQL = HYDRATED_FILMS.formatted(
+            "ORDER BY f.likes_count DESC, f.film_id LIMIT ?",
+            "f.likes_count DESC, f.film_id, fg.genre_id");
+
+    private final FilmResultSetExtractor extractor;
+    private final EntityVersions versions;
+    private final FilmCache cache;
+    private final FilmSearchIndex searchIndex;
+    private final PopularityIndex popularityIndex;
+    // id всех фильмов для проверок существования без чтения строк
+    private final TransactionalIdSet ids = new TransactionalIdSet();
 
-    public FilmRepository(JdbcTemplate jdbc, RowMapper<Film> mapper) {
+    public FilmRepository(JdbcTemplate jdbc, RowMapper<Film> mapper, FilmResultSetExtractor extractor,
+                          EntityVersions versions, FilmCache cache, FilmSearchIndex searchIndex,
+                          PopularityIndex popularityIndex) {
         super(jdbc, mapper);
+        this.extractor = extractor;
+        this.versions = versions;
+        this.cache = cache;
+        this.searchIndex = searchIndex;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void loadIndexes() {
+        IdBitmap.Loader idLoader = ids.loader();
+        FilmSearchIndex.Loader searchLoader = searchIndex.loader();
+        popularityIndex.rebuild(getLikesCountByFilm());
+        // по возрастанию film_id: списки вхождений поискового индекса только дописываются;
+        // год и жанры для рейтингов с фильтром собираются в том же проходе
+        stream(FIND_ALL_INDEXED_QUERY, rs -> {
+            long current = 0;
+            int year = PopularityIndex.NO_YEAR;
+            IntStream.Builder genres = IntStream.builder();
+            while (rs.next()) {
+                long id = rs.getLong("film_id");
+                if (id != current) {
+                    if (current != 0) {
+                        popularityIndex.register(current, year, genres.build().toArray());
+                    }
+                    current = id;
+                    idLoader.add(id);
+                    searchLoader.add(id, rs.getString("name"), rs.getString("description"));
+                    java.sql.Date releaseDate = rs.getDate("release_date");
+                    year = releaseDate == null ? PopularityIndex.NO_YEAR : releaseDate.toLocalDate().getYear();
+                    genres = IntStream.builder();
+                }
+                int genreId = rs.getInt("genre_id");
+                if (!rs.wasNull()) {
+                    genres.add(genreId);
+                }
+            }
+            if (current != 0) {
+                popularityIndex.register(current, year, genres.build().toArray());
+            }
+            return null;
+        });
+        idLoader.publish();
+        searchLoader.publish();
+        log.info("Загружено {} id фильмов, поисковый индекс и рейтинг популярности", ids.cardinality());
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
         long id = insert(INSERT_QUERY,
                 film.getName(),
@@ -59,20 +164,52 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
         );
         film.setId(id);
 
-        jdbc.update(DELETE_FILM_GENRES_QUERY, id);
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                try {
-                    jdbc.update(INSERT_FILM_GENRES_QUERY, id, genre.getId());
-                } catch (DuplicateKeyException ignored) {
-                    log.warn("Попытка добавить дублирующийся жанр {} для фильма {}", genre.getName(), film.getName());
-                }
-            }
-        }
+        insertGenres(id, genreIds(film));
+        ids.add(id);
+        indexAfterCommit(id, film);
         return film;
     }
 
     @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        long[] created = insertAll(INSERT_QUERY, KEY_COLUMNS, films.stream()
+                .map(film -> new Object[]{
+                        film.getName(),
+                        film.getDescription(),
+                        film.getReleaseDate(),
+                        film.getDuration(),
+                        film.getMpaRating().getId()})
+                .toList());
+
+        List<Object[]> genreRows = new ArrayList<>();
+        for (int i = 0; i < created.length; i++) {
+            Film film = films.get(i);
+            film.setId(created[i]);
+            ids.add(created[i]);
+            indexAfterCommit(created[i], film);
+            genreIds(film).forEach(genreId -> genreRows.add(new Object[]{film.getId(), genreId}));
+        }
+        if (!genreRows.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRES_QUERY, genreRows);
+        }
+        return films;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return id != null && ids.contains(id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> candidates) {
+        Set<Long> existing = new HashSet<>();
+        candidates.stream().filter(this::exists).forEach(existing::add);
+        return existing;
+    }
+
+    @Override
+    @Transactional
     public Film update(Film newFilm) {
         int updated = jdbc.update(UPDATE_QUERY,
                 newFilm.getName(),
@@ -86,60 +223,209 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
             throw new NotFoundException("Фильм не найден");
         }
 
-        jdbc.update(DELETE_FILM_GENRES_QUERY, newFilm.getId());
-        if (newFilm.getGenres() != null) {
-            for (Genre genre : newFilm.getGenres()) {
-                try {
-                    jdbc.update(INSERT_FILM_GENRES_QUERY, newFilm.getId(), genre.getId());
-                } catch (DuplicateKeyException ignored) {
-                    log.warn("Попытка добавить дублирующийся жанр {} для фильма {}", genre.getName(), newFilm.getName());
-                }
-            }
+        // Применяем только разницу между старым и новым набором жанров
+        Set<Integer> newGenres = genreIds(newFilm);
+        Set<Integer> oldGenres = new HashSet<>(
+                jdbc.queryForList(FIND_FILM_GENRE_IDS_QUERY, Integer.class, newFilm.getId()));
+
+        Set<Integer> removed = new HashSet<>(oldGenres);
+        removed.removeAll(newGenres);
+        if (!removed.isEmpty()) {
+            jdbc.update(DELETE_FILM_GENRES_QUERY, newFilm.getId(), removed.toArray(new Integer[0]));
         }
+
+        newGenres.removeAll(oldGenres);
+        insertGenres(newFilm.getId(), newGenres);
+        indexAfterCommit(newFilm.getId(), newFilm);
+        changed(newFilm.getId());
         return newFilm;
     }
 
+    // Поисковый индекс общий для всех потоков, поэтому меняется только после фиксации, как и ids:
+    // откат не должен оставлять в поиске несохранённый текст или терять удаление, которое не случилось
+    private void indexAfterCommit(long id, Film film) {
+        String name = film.getName();
+        String description = film.getDescription();
+        AfterCommit.run(() -> searchIndex.index(id, name, description));
+    }
+
+    private void insertGenres(long filmId, Set<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate(INSERT_FILM_GENRES_QUERY, genreIds.stream()
+                .map(genreId -> new Object[]{filmId, genreId})
+                .toList());
+    }
+
+    private static Set<Integer> genreIds(Film film) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> ids.add(genre.getId()));
+        }
+        return ids;
+    }
+
     @Override
+    @Transactional
     public void delete(Long id) {
-
+        // внешние ключи без каскада: сначала лайки и жанры фильма
+        jdbc.update(DELETE_FILM_LIKES_QUERY, id);
+        jdbc.update(DELETE_ALL_FILM_GENRES_QUERY, id);
+        delete(DELETE_QUERY, id);
+        ids.remove(id);
+        AfterCommit.run(() -> searchIndex.remove(id));
+        changed(id);
     }
 
     @Override
+    @ReplicaRead
     public Optional<Film> getFilmById(Long id) {
-        Film film = findOne(FIND_BY_ID_QUERY, id).orElse(null);
-        ;
-        if (film != null) {
-            film.setGenres(findGenresByFilmId(film.getId()));
+        return cache.get(id, key -> jdbc.query(FIND_BY_ID_QUERY, extractor, key).stream().findFirst());
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
+        int inserted;
+        try {
+            inserted = jdbc.update(ADD_LIKE_SQL, filmId, userId, filmId, userId, filmId, userId);
+        } catch (DuplicateKeyException ignored) {
+            // параллельный запрос успел поставить этот же лайк
+            inserted = 0;
+        }
+        if (inserted > 0) {
+            jdbc.update(CHANGE_LIKES_COUNT_SQL, 1, filmId);
+            changed(filmId);
+        }
+        return inserted > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean removeLike(Long filmId, Long userId) {
+        int deleted = jdbc.update(DELETE_LIKE_SQL, filmId, userId);
+        if (deleted > 0) {
+            jdbc.update(CHANGE_LIKES_COUNT_SQL, -1, filmId);
+            changed(filmId);
         }
-        assert film != null;
-        return Optional.of(film);
+        return deleted > 0;
+    }
+
+    @Override
+    @Transactional
+    public Map<Long, Integer> applyLikes(Collection<FilmLike> added, Collection<FilmLike> removed) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        if (!added.isEmpty()) {
+            List<Object[]> params = added.stream()
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId(),
+                            like.getFilmId(), like.getUserId()})
+                    .toList();
+            collectDeltas(added, jdbc.batchUpdate(ADD_LIKE_SQL, params), 1, deltas);
+        }
+        if (!removed.isEmpty()) {
+            List<Object[]> params = removed.stream()
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                    .toList();
+            collectDeltas(removed, jdbc.batchUpdate(DELETE_LIKE_SQL, params), -1, deltas);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        if (!deltas.isEmpty()) {
+            jdbc.batchUpdate(CHANGE_LIKES_COUNT_SQL, deltas.entrySet().stream()
+                    .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                    .toList());
+            deltas.keySet().forEach(this::changed);
+        }
+        return deltas;
+    }
+
+    @Override
+    public void streamLikes(Consumer<FilmLike> action) {
+        stream(FIND_ALL_LIKES_SQL, rs -> {
+            while (rs.next()) {
+                action.accept(new FilmLike(rs.getLong("film_id"), rs.getLong("user_id")));
+            }
+            return null;
+        });
     }
 
     @Override
-    public void addLike(Long filmId, Long userId) {
-        jdbc.update(ADD_LIKE_SQL, filmId, userId);
+    public int reconcileLikesCount() {
+        int repaired = jdbc.update(RECONCILE_LIKES_COUNT_SQL);
+        if (repaired > 0) {
+            versions.filmsChanged();
+            cache.invalidateAll();
+        }
+        return repaired;
     }
 
     @Override
-    public void removeLike(Long filmId, Long userId) {
-        jdbc.update(DELETE_LIKE_SQL, filmId, userId);
+    public Map<Long, Integer> getLikesCountByFilm() {
+        return jdbc.query(LIKES_COUNT_BY_FILM_SQL, rs -> {
+            Map<Long, Integer> result = new HashMap<>();
+            while (rs.next()) {
+                result.put(rs.getLong("film_id"), rs.getInt("likes"));
+            }
+            return result;
+        });
     }
 
     @Override
+    @ReplicaRead
     public Collection<Film> getPopularFilms(int count) {
-        return jdbc.query(POPULAR_FILMS_SQL, mapper, count);
+        return jdbc.query(POPULAR_FILMS_SQL, extractor, count);
+    }
+
+    private static void collectDeltas(Collection<FilmLike> likes, int[] counts, int sign, Map<Long, Integer> deltas) {
+        int idx = 0;
+        for (FilmLike like : likes) {
+            if (counts[idx++] > 0) {
+                deltas.merge(like.getFilmId(), sign, Integer::sum);
+            }
+        }
     }
 
     @Override
+    @ReplicaRead
     public Collection<Film> findAll() {
-        return jdbc.query(FIND_ALL_QUERY, mapper);
+        return jdbc.query(FIND_ALL_QUERY, extractor);
+    }
+
+    @Override
+    @ReplicaRead
+    public List<Film> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return cache.getAll(ids, this::loadByIds);
+    }
+
+    private Map<Long, Film> loadByIds(Collection<? extends Long> ids) {
+        Map<Long, Film> byId = new HashMap<>();
+        jdbc.query(FIND_BY_IDS_QUERY, extractor, (Object) ids.toArray(new Long[0]))
+                .forEach(film -> byId.put(film.getId(), film));
+        return byId;
+    }
 
+    // Версия для ETag и запись кэша меняются вместе с фильмом
+    private void changed(long filmId) {
+        versions.filmChanged(filmId);
+        cache.invalidate(filmId);
     }
 
-    private Set<Genre> findGenresByFilmId(Long filmId) {
-        return new LinkedHashSet<>(jdbc.query(GENRES_BY_FILM_ID_SQL,
-                (rs, rowNum) -> new Genre(rs.getInt("genre_id"), rs.getString("name")),
-                filmId));
+    @Override
+    @ReplicaRead
+    public Collection<Film> findPage(Long afterId, int limit) {
+        return jdbc.query(FIND_PAGE_QUERY, extractor, afterId == null ? 0L : afterId, limit);
+    }
+
+    @Override
+    @ReplicaRead
+    public void streamAll(Consumer<Film> action) {
+        stream(FIND_ALL_QUERY, rs -> {
+            extractor.forEachFilm(rs, action);
+            return null;
+        });
     }
 
 }
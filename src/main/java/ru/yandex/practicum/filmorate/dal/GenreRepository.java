@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.dal;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
@@ -11,21 +13,32 @@ import java.util.stream.Collectors;
 
 @Repository
 public class GenreRepository extends BaseRepository<Genre> implements GenreStorage {
-    private static final String FIND_ALL = "SELECT * FROM genres";
-    private static final String FIND_BY_ID = "SELECT * FROM genres WHERE genre_id = ?";
+    private static final String FIND_ALL = "SELECT * FROM genres ORDER BY genre_id";
 
-    public GenreRepository(JdbcTemplate jdbc, RowMapper<Genre> mapper) {
+    // Справочник жанров загружается при старте и перечитывается целиком при изменениях
+    private volatile ReferenceDictionary<Genre> dictionary = ReferenceDictionary.empty();
+
+    private final EntityVersions versions;
+
+    public GenreRepository(JdbcTemplate jdbc, RowMapper<Genre> mapper, EntityVersions versions) {
         super(jdbc, mapper);
+        this.versions = versions;
+    }
+
+    @PostConstruct
+    public void refresh() {
+        dictionary = ReferenceDictionary.of(findMany(FIND_ALL), Genre::getId);
+        versions.genresChanged();
     }
 
     @Override
     public Optional<Genre> findById(int id) {
-        return findOne(FIND_BY_ID, id);
+        return dictionary.find(id);
     }
 
     @Override
     public Collection<Genre> findAll() {
-        return findMany(FIND_ALL);
+        return dictionary.values();
     }
 
     @Override
@@ -38,17 +51,18 @@ public class GenreRepository extends BaseRepository<Genre> implements GenreStora
                 .map(id -> "?")
                 .collect(Collectors.joining(", "));
 
-        String sql = "SELECT fg.film_id, g.genre_id, g.name " +
+        String sql = "SELECT fg.film_id, fg.genre_id " +
                 "FROM film_genre fg " +
-                "JOIN genres g ON fg.genre_id = g.genre_id " +
-                "WHERE fg.film_id IN (" + inSql + ")";
+                "WHERE fg.film_id IN (" + inSql + ") " +
+                "ORDER BY fg.film_id, fg.genre_id";
 
+        ReferenceDictionary<Genre> genres = dictionary;
         return jdbc.query(sql, filmIds.toArray(), rs -> {
             Map<Long, Set<Genre>> result = new HashMap<>();
             while (rs.next()) {
                 Long filmId = rs.getLong("film_id");
-                Genre genre = new Genre(rs.getInt("genre_id"), rs.getString("name"));
-                result.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
+                genres.find(rs.getInt("genre_id"))
+                        .ifPresent(genre -> result.computeIfAbsent(filmId, k -> new LinkedHashSet<>()).add(genre));
             }
             return result;
         });
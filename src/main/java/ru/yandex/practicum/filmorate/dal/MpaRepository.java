@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.dal;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 
@@ -11,20 +13,31 @@ import java.util.Optional;
 
 @Repository
 public class MpaRepository extends BaseRepository<MpaRating> implements MpaStorage {
-    private static final String FIND_ALL = "SELECT * FROM mpa_rating";
-    private static final String FIND_BY_ID = "SELECT * FROM mpa_rating WHERE mpa_rating_id = ?";
+    private static final String FIND_ALL = "SELECT * FROM mpa_rating ORDER BY mpa_rating_id";
 
-    public MpaRepository(JdbcTemplate jdbc, RowMapper<MpaRating> mapper) {
+    // Справочник рейтингов загружается при старте и перечитывается целиком при изменениях
+    private volatile ReferenceDictionary<MpaRating> dictionary = ReferenceDictionary.empty();
+
+    private final EntityVersions versions;
+
+    public MpaRepository(JdbcTemplate jdbc, RowMapper<MpaRating> mapper, EntityVersions versions) {
         super(jdbc, mapper);
+        this.versions = versions;
+    }
+
+    @PostConstruct
+    public void refresh() {
+        dictionary = ReferenceDictionary.of(findMany(FIND_ALL), MpaRating::getId);
+        versions.mpaChanged();
     }
 
     @Override
     public Optional<MpaRating> findById(int id) {
-        return findOne(FIND_BY_ID, id);
+        return dictionary.find(id);
     }
 
     @Override
     public Collection<MpaRating> findAll() {
-        return findMany(FIND_ALL);
+        return dictionary.values();
     }
 }
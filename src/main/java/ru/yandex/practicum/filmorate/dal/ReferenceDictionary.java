@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+
+/**
+ * Неизменяемый справочник (MPA, жанры), индексированный по id.
+ * Небольшие плотные id хранятся в списке с доступом по индексу, остальные — в карте,
+ * чтобы большой или разреженный id не раздувал справочник.
+ * Поиск по id не обращается к БД и не создаёт новых объектов.
+ */
+public final class ReferenceDictionary<T> {
+    // список по индексу используется, только если id не больше этого и заняты хотя бы наполовину
+    private static final int MAX_DENSE_ID = 1024;
+
+    private static final ReferenceDictionary<Object> EMPTY = of(List.of(), item -> 0);
+
+    private final List<Optional<T>> dense;
+    private final Map<Integer, Optional<T>> sparse;
+    private final List<T> values;
+
+    private ReferenceDictionary(List<Optional<T>> dense, Map<Integer, Optional<T>> sparse, List<T> values) {
+        this.dense = dense;
+        this.sparse = sparse;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ReferenceDictionary<T> empty() {
+        return (ReferenceDictionary<T>) EMPTY;
+    }
+
+    public static <T> ReferenceDictionary<T> of(Collection<T> items, ToIntFunction<T> idGetter) {
+        List<T> sorted = items.stream()
+                .sorted(Comparator.comparingInt(idGetter))
+                .toList();
+        int minId = sorted.isEmpty() ? 0 : idGetter.applyAsInt(sorted.getFirst());
+        int maxId = sorted.isEmpty() ? -1 : idGetter.applyAsInt(sorted.getLast());
+
+        if (minId >= 0 && maxId < MAX_DENSE_ID && maxId < 2 * sorted.size()) {
+            List<Optional<T>> byId = new ArrayList<>(Collections.nCopies(maxId + 1, Optional.empty()));
+            for (T item : sorted) {
+                byId.set(idGetter.applyAsInt(item), Optional.of(item));
+            }
+            return new ReferenceDictionary<>(List.copyOf(byId), null, sorted);
+        }
+        Map<Integer, Optional<T>> byId = new HashMap<>();
+        for (T item : sorted) {
+            byId.put(idGetter.applyAsInt(item), Optional.of(item));
+        }
+        return new ReferenceDictionary<>(null, Map.copyOf(byId), sorted);
+    }
+
+    public Optional<T> find(int id) {
+        if (dense == null) {
+            return sparse.getOrDefault(id, Optional.empty());
+        }
+        if (id < 0 || id >= dense.size()) {
+            return Optional.empty();
+        }
+        return dense.get(id);
+    }
+
+    public boolean contains(int id) {
+        return find(id).isPresent();
+    }
+
+    public List<T> values() {
+        return values;
+    }
+}
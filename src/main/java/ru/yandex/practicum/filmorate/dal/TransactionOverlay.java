@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Изменения структуры в памяти, накопленные текущей транзакцией. Они привязываются
+ * к транзакции как ресурс, видны только ей, снимаются при её завершении и переносятся
+ * в общую структуру после фиксации через {@link AfterCommit}.
+ */
+public final class TransactionOverlay<T> {
+    private final Supplier<T> factory;
+    private final Consumer<T> publish;
+
+    public TransactionOverlay(Supplier<T> factory, Consumer<T> publish) {
+        this.factory = factory;
+        this.publish = publish;
+    }
+
+    /**
+     * Изменения текущей транзакции; null — транзакции нет. Без create возвращает null
+     * и тогда, когда транзакция ещё ничего не меняла.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        T pending = (T) TransactionSynchronizationManager.getResource(this);
+        if (pending == null && create) {
+            T created = factory.get();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TransactionOverlay.this);
+                }
+            });
+            AfterCommit.run(() -> publish.accept(created));
+            pending = created;
+        }
+        return pending;
+    }
+}
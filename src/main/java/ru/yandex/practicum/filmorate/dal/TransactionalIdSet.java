@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import ru.yandex.practicum.filmorate.index.IdBitmap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link IdBitmap} с учётом транзакций: изменения внутри транзакции видны только ей самой
+ * и переносятся в общее множество после фиксации через {@link TransactionOverlay}. При откате
+ * общее множество не меняется, так что оно не сообщает о несуществующих строках
+ * и не теряет строки, удаление которых откатилось.
+ */
+final class TransactionalIdSet {
+    private final IdBitmap committed = new IdBitmap();
+    private final TransactionOverlay<Pending> overlay = new TransactionOverlay<>(Pending::new, pending -> {
+        pending.removed.forEach(committed::remove);
+        pending.added.forEach(committed::add);
+    });
+
+    boolean contains(long id) {
+        Pending pending = overlay.get(false);
+        if (pending != null) {
+            if (pending.removed.contains(id)) {
+                return false;
+            }
+            if (pending.added.contains(id)) {
+                return true;
+            }
+        }
+        return committed.contains(id);
+    }
+
+    void add(long id) {
+        Pending pending = overlay.get(true);
+        if (pending == null) {
+            committed.add(id);
+        } else {
+            pending.removed.remove(id);
+            pending.added.add(id);
+        }
+    }
+
+    void remove(long id) {
+        Pending pending = overlay.get(true);
+        if (pending == null) {
+            committed.remove(id);
+        } else {
+            pending.added.remove(id);
+            pending.removed.add(id);
+        }
+    }
+
+    long cardinality() {
+        return committed.cardinality();
+    }
+
+    IdBitmap.Loader loader() {
+        return committed.loader();
+    }
+
+    private static final class Pending {
+        private final Set<Long> added = new HashSet<>();
+        private final Set<Long> removed = new HashSet<>();
+    }
+}
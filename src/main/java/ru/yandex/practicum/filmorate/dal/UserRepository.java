@@ -1,93 +1,271 @@
 package ru.yandex.practicum.filmorate.dal;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.routing.ReplicaRead;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.index.EmailIndex;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.index.FriendSuggestions;
+import ru.yandex.practicum.filmorate.index.IdBitmap;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository
 public class UserRepository extends BaseRepository<User> implements UserStorage {
     public static final String DELETE_FRIENDSHIP_QUERY = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
-    public static final String FIND_FRIENDS_QUERY = "SELECT u.* FROM users u " +
-            "JOIN friendships f ON u.user_id = f.friend_id " +
-            "WHERE f.user_id = ?";
-    public static final String FIND_COMMON_FRIENDS_QUERY = "SELECT u.* FROM users u " +
-            "JOIN friendships f1 ON u.user_id = f1.friend_id " +
-            "JOIN friendships f2 ON u.user_id = f2.friend_id " +
-            "WHERE f1.user_id = ? AND f2.user_id = ?";
-    private static final String FIND_ALL_QUERY = "SELECT * FROM users";
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE user_id = ANY(?) ORDER BY user_id";
+    private static final String FIND_ALL_FRIENDSHIPS_QUERY = "SELECT user_id, friend_id FROM friendships";
+    private static final String FIND_ALL_QUERY = "SELECT * FROM users ORDER BY user_id";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE user_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?" +
             " WHERE user_id = ?";
+    private static final String[] KEY_COLUMNS = {"user_id"};
+    private static final String MERGE_FRIENDSHIP_QUERY = "MERGE INTO friendships (user_id, friend_id, status) " +
+            "KEY (user_id, friend_id) VALUES (?, ?, 'PENDING')";
+    private static final String FIND_ALL_EMAILS_QUERY = "SELECT user_id, email FROM users";
     private static final String INSERT_FRIENDSHIP_QUERY = "INSERT INTO friendships (user_id, friend_id, status) " +
             "VALUES (?, ?, 'PENDING')";
 
-    public UserRepository(JdbcTemplate jdbc, RowMapper<User> mapper) {
+    private final EmailIndex emailIndex;
+    private final FriendGraph friendGraph;
+    private final FriendSuggestions friendSuggestions;
+    // id всех пользователей для проверок существования без чтения строк
+    private final TransactionalIdSet ids = new TransactionalIdSet();
+
+    public UserRepository(JdbcTemplate jdbc,
+                          RowMapper<User> mapper,
+                          EmailIndex emailIndex,
+                          FriendGraph friendGraph,
+                          FriendSuggestions friendSuggestions) {
         super(jdbc, mapper);
+        this.emailIndex = emailIndex;
+        this.friendGraph = friendGraph;
+        this.friendSuggestions = friendSuggestions;
+    }
+
+    @PostConstruct
+    public void loadEmailIndex() {
+        emailIndex.clear();
+        IdBitmap.Loader loader = ids.loader();
+        stream(FIND_ALL_EMAILS_QUERY, rs -> {
+            while (rs.next()) {
+                long id = rs.getLong("user_id");
+                emailIndex.put(id, rs.getString("email"));
+                loader.add(id);
+            }
+            return null;
+        });
+        loader.publish();
+    }
+
+    @PostConstruct
+    public void loadFriendGraph() {
+        FriendGraph.Loader loader = friendGraph.loader();
+        stream(FIND_ALL_FRIENDSHIPS_QUERY, rs -> {
+            while (rs.next()) {
+                loader.add(rs.getLong("user_id"), rs.getLong("friend_id"));
+            }
+            return null;
+        });
+        loader.publish();
+        friendSuggestions.invalidateAll();
     }
 
     @Override
     public User create(User user) {
-        long id = insert(INSERT_QUERY,
-                user.getEmail(),
-                user.getLogin(),
-                user.getName(),
-                user.getBirthday()
-        );
+        long id;
+        try {
+            id = insert(INSERT_QUERY, KEY_COLUMNS,
+                    user.getEmail(),
+                    user.getLogin(),
+                    user.getName(),
+                    user.getBirthday()
+            );
+        } catch (DuplicateKeyException e) {
+            throw new DuplicatedDataException("Email уже используется: " + user.getEmail());
+        }
         user.setId(id);
+        emailIndex.put(id, user.getEmail());
+        ids.add(id);
         return user;
     }
 
+    @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        long[] created;
+        try {
+            created = insertAll(INSERT_QUERY, KEY_COLUMNS, users.stream()
+                    .map(user -> new Object[]{user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()})
+                    .toList());
+        } catch (DuplicateKeyException e) {
+            throw new DuplicatedDataException("Email уже используется одним из пользователей пакета");
+        }
+        for (int i = 0; i < created.length; i++) {
+            User user = users.get(i);
+            user.setId(created[i]);
+            emailIndex.put(created[i], user.getEmail());
+            ids.add(created[i]);
+        }
+        return users;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return id != null && ids.contains(id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> candidates) {
+        Set<Long> existing = new HashSet<>();
+        candidates.stream().filter(this::exists).forEach(existing::add);
+        return existing;
+    }
+
+    @Override
+    @Transactional
+    public void addFriends(Collection<Friendship> friendships) {
+        if (friendships.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate(MERGE_FRIENDSHIP_QUERY, friendships.stream()
+                .map(friendship -> new Object[]{friendship.getUserId(), friendship.getFriendId()})
+                .toList());
+        friendships.forEach(friendship -> friendGraph.add(friendship.getUserId(), friendship.getFriendId()));
+        List<Long> changedUsers = friendships.stream()
+                .map(Friendship::getUserId)
+                .distinct()
+                .toList();
+        AfterCommit.run(() -> changedUsers.forEach(friendSuggestions::invalidate));
+    }
+
     @Override
     public User update(User user) {
-        update(
-                UPDATE_QUERY,
-                user.getEmail(),
-                user.getLogin(),
-                user.getName(),
-                user.getBirthday(),
-                user.getId()
-        );
+        try {
+            update(
+                    UPDATE_QUERY,
+                    user.getEmail(),
+                    user.getLogin(),
+                    user.getName(),
+                    user.getBirthday(),
+                    user.getId()
+            );
+        } catch (DuplicateKeyException e) {
+            throw new DuplicatedDataException("Email уже используется: " + user.getEmail());
+        }
+        emailIndex.put(user.getId(), user.getEmail());
         return user;
     }
 
     @Override
     public void delete(Long id) {
         delete("DELETE FROM users WHERE user_id = ?", id);
+        emailIndex.remove(id);
+        ids.remove(id);
+        friendGraph.removeUser(id);
+        AfterCommit.run(friendSuggestions::invalidateAll);
+    }
+
+    @Override
+    public Optional<Long> findIdByEmail(String email) {
+        return emailIndex.findUserId(email);
     }
 
     @Override
     public void addFriend(Long userId, Long friendId) {
         jdbc.update(INSERT_FRIENDSHIP_QUERY, userId, friendId);
+        friendGraph.add(userId, friendId);
+        AfterCommit.run(() -> friendSuggestions.invalidate(userId));
     }
 
     @Override
     public void deleteFriend(Long userId, Long friendId) {
         jdbc.update(DELETE_FRIENDSHIP_QUERY, userId, friendId);
+        friendGraph.remove(userId, friendId);
+        AfterCommit.run(() -> friendSuggestions.invalidate(userId));
     }
 
     @Override
+    @ReplicaRead
     public Collection<User> getCommonFriends(Long id, Long otherId) {
-        return findMany(FIND_COMMON_FRIENDS_QUERY, id, otherId);
+        return findByIds(friendGraph.commonFriends(id, otherId));
     }
 
     @Override
+    @ReplicaRead
     public Collection<User> findAll() {
         return findMany(FIND_ALL_QUERY);
     }
 
     @Override
+    @ReplicaRead
     public Optional<User> getUserById(Long id) {
         return findOne(FIND_BY_ID_QUERY, id);
     }
 
     @Override
+    @ReplicaRead
     public Collection<User> findAllFriend(Long id) {
-        return findMany(FIND_FRIENDS_QUERY, id);
+        return findByIds(friendGraph.friendsOf(id));
+    }
+
+    @Override
+    @ReplicaRead
+    public List<User> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, User> byId = new HashMap<>();
+        findMany(FIND_BY_IDS_QUERY, (Object) ids.toArray(new Long[0]))
+                .forEach(user -> byId.put(user.getId(), user));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Id берутся из графа дружбы в памяти, из БД читаются только сами пользователи
+    private Collection<User> findByIds(long[] ids) {
+        if (ids.length == 0) {
+            return List.of();
+        }
+        return findMany(FIND_BY_IDS_QUERY, (Object) Arrays.stream(ids).boxed().toArray(Long[]::new));
+    }
+
+    @Override
+    @ReplicaRead
+    public Collection<User> findPage(Long afterId, int limit) {
+        return findMany(FIND_PAGE_QUERY, afterId == null ? 0L : afterId, limit);
+    }
+
+    @Override
+    @ReplicaRead
+    public void streamAll(Consumer<User> action) {
+        stream(FIND_ALL_QUERY, rs -> {
+            int rowNum = 0;
+            while (rs.next()) {
+                action.accept(mapper.mapRow(rs, rowNum++));
+            }
+            return null;
+        });
     }
 }
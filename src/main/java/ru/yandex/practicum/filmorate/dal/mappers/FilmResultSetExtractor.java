@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.dal.mappers;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Собирает фильмы целиком (MPA, жанры, количество лайков) из одного запроса
+ * вида films LEFT JOIN film_genre. Строки одного фильма должны идти подряд,
+ * поэтому запрос обязан сортировать по film_id (после ключей ранжирования).
+ */
+@Component
+@RequiredArgsConstructor
+public class FilmResultSetExtractor implements ResultSetExtractor<List<Film>> {
+    private final FilmRowMapper filmRowMapper;
+    private final GenreStorage genreStorage;
+
+    @Override
+    public List<Film> extractData(ResultSet rs) throws SQLException {
+        List<Film> films = new ArrayList<>();
+        forEachFilm(rs, films::add);
+        return films;
+    }
+
+    public void forEachFilm(ResultSet rs, Consumer<Film> action) throws SQLException {
+        Film current = null;
+        int rowNum = 0;
+        while (rs.next()) {
+            long filmId = rs.getLong("film_id");
+            if (current == null || current.getId() != filmId) {
+                if (current != null) {
+                    action.accept(current);
+                }
+                current = filmRowMapper.mapRow(rs, rowNum++);
+                current.setGenres(new LinkedHashSet<>());
+            }
+            addGenre(current.getGenres(), rs);
+        }
+        if (current != null) {
+            action.accept(current);
+        }
+    }
+
+    private void addGenre(Set<Genre> genres, ResultSet rs) throws SQLException {
+        int genreId = rs.getInt("genre_id");
+        if (!rs.wasNull()) {
+            genreStorage.findById(genreId).ifPresent(genres::add);
+        }
+    }
+}
@@ -27,6 +27,7 @@ public class FilmRowMapper implements RowMapper<Film> {
         }
 
         film.setDuration(rs.getLong("duration"));
+        film.setLikesCount(rs.getInt("likes_count"));
 
         // Заполняем MPA если есть
         Integer mpaId = rs.getObject("mpa_rating_id", Integer.class);
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.dal.profiling;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * Источник соединений, который замеряет каждое выполнение запроса и передаёт его в
+ * {@link SqlProfiler}: соединения и запросы оборачиваются динамическими прокси JDBC.
+ * Через него идёт и JdbcTemplate репозиториев, и пакетная запись через ConnectionCallback.
+ * Строки результата считаются, только когда для потока открыт профиль.
+ */
+public class ProfilingDataSource extends DelegatingDataSource {
+    private final Supplier<SqlProfiler> profiler;
+
+    public ProfilingDataSource(DataSource target, Supplier<SqlProfiler> profiler) {
+        super(target);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    private static <T> T wrap(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(ProfilingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = ProfilingDataSource.invoke(target, method, args);
+            if (result instanceof CallableStatement statement) {
+                return wrap(CallableStatement.class, new StatementHandler(statement, (String) args[0]));
+            }
+            if (result instanceof PreparedStatement statement) {
+                return wrap(PreparedStatement.class, new StatementHandler(statement, (String) args[0]));
+            }
+            if (result instanceof Statement statement) {
+                return wrap(Statement.class, new StatementHandler(statement, null));
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        // для Statement без подготовленного текста — текст из addBatch(sql) или execute(sql)
+        private String sql;
+        private int batchSize;
+
+        private StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "addBatch":
+                    batchSize++;
+                    if (args != null && sql == null) {
+                        sql = (String) args[0];
+                    }
+                    return ProfilingDataSource.invoke(target, method, args);
+                case "clearBatch":
+                    batchSize = 0;
+                    return ProfilingDataSource.invoke(target, method, args);
+                case "getResultSet":
+                    return rows(ProfilingDataSource.invoke(target, method, args));
+                default:
+                    if (!name.startsWith("execute")) {
+                        return ProfilingDataSource.invoke(target, method, args);
+                    }
+            }
+
+            String executed = args != null && args.length > 0 && args[0] instanceof String text ? text : sql;
+            boolean batch = name.endsWith("Batch");
+            int statements = batch ? Math.max(batchSize, 1) : 1;
+            long started = System.nanoTime();
+            Object result = ProfilingDataSource.invoke(target, method, args);
+            SqlProfiler current = profiler.get();
+            current.executed(executed, statements, System.nanoTime() - started);
+            if (batch) {
+                batchSize = 0;
+            }
+            if (result instanceof Integer || result instanceof Long) {
+                current.rows(Math.max(0, ((Number) result).longValue()));
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    current.rows(Math.max(0, count));
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    current.rows(Math.max(0, count));
+                }
+            }
+            return rows(result);
+        }
+
+        private Object rows(Object result) {
+            if (result instanceof ResultSet resultSet && profiler.get().isProfiling()) {
+                return wrap(ResultSet.class, new ResultSetHandler(resultSet));
+            }
+            return result;
+        }
+    }
+
+    private final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+
+        private ResultSetHandler(ResultSet target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = ProfilingDataSource.invoke(target, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                profiler.get().rows(1);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.dal.profiling;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает DataSource приложения в {@link ProfilingDataSource}. Постпроцессоры создаются
+ * раньше остальных бинов и до подстановки @Value, поэтому настройка читается из Environment,
+ * а профилировщик берётся лениво.
+ */
+@Component
+public class ProfilingDataSourcePostProcessor implements BeanPostProcessor {
+    private final boolean enabled;
+    private final ObjectProvider<SqlProfiler> profiler;
+
+    public ProfilingDataSourcePostProcessor(Environment environment, ObjectProvider<SqlProfiler> profiler) {
+        this.enabled = environment.getProperty("filmorate.sql.profiling.enabled", Boolean.class, false);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (enabled && bean instanceof DataSource dataSource && !(bean instanceof ProfilingDataSource)) {
+            return new ProfilingDataSource(dataSource, SingletonSupplier.of(profiler::getObject));
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.dal.profiling;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL, выполненный в рамках одного HTTP-запроса или блока {@link SqlProfiler#profile}.
+ * Пакет из N строк — одно обращение к БД (roundTrips) и N выполненных запросов (statements).
+ * Rows — прочитанные строки результатов плюс строки, изменённые обновлениями.
+ * Заполняется одним потоком, не потокобезопасен.
+ */
+public final class SqlProfile {
+    private int statements;
+    private int roundTrips;
+    private long rows;
+    private long nanos;
+    private final Map<String, Integer> executionsBySql = new HashMap<>();
+
+    void executed(String sql, int batchSize, long elapsedNanos) {
+        statements += batchSize;
+        roundTrips++;
+        nanos += elapsedNanos;
+        executionsBySql.merge(sql == null ? "?" : sql, 1, Integer::sum);
+    }
+
+    void rows(long count) {
+        rows += count;
+    }
+
+    public int statements() {
+        return statements;
+    }
+
+    public int roundTrips() {
+        return roundTrips;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public int executions(String sql) {
+        return executionsBySql.getOrDefault(sql, 0);
+    }
+
+    /**
+     * Запросы, выполненные больше threshold раз, — признак N+1 (запрос на каждую строку
+     * вместо одного на всех), по убыванию числа выполнений.
+     */
+    public Map<String, Integer> repeatedMoreThan(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        executionsBySql.entrySet().stream()
+                .filter(entry -> entry.getValue() > threshold)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> repeated.put(entry.getKey(), entry.getValue()));
+        return repeated;
+    }
+
+    @Override
+    public String toString() {
+        return statements + " запросов за " + roundTrips + " обращений, " + rows + " строк, " + millis() + " мс";
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.dal.profiling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Собирает {@link SqlProfile} для текущего потока: HTTP-запрос открывает его в
+ * {@link SqlProfilingFilter}, тесты — через {@link #profile}. Запросы дольше порога
+ * пишутся в журнал всегда, в том числе вне HTTP-запросов (старт, фоновые задачи).
+ */
+@Slf4j
+@Component
+public class SqlProfiler {
+    private final ThreadLocal<SqlProfile> current = new ThreadLocal<>();
+    private final boolean enabled;
+    private final long slowQueryNanos;
+    private final int repeatThreshold;
+
+    public SqlProfiler(@Value("${filmorate.sql.profiling.enabled:false}") boolean enabled,
+                       @Value("${filmorate.sql.profiling.slow-query-threshold:PT0.2S}") Duration slowQueryThreshold,
+                       @Value("${filmorate.sql.profiling.repeat-threshold:10}") int repeatThreshold) {
+        this.enabled = enabled;
+        this.slowQueryNanos = slowQueryThreshold.toNanos();
+        this.repeatThreshold = repeatThreshold;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int repeatThreshold() {
+        return repeatThreshold;
+    }
+
+    /**
+     * Выполняет action и возвращает SQL, выполненный за это время в текущем потоке.
+     * Для проверки бюджета запросов в тестах.
+     */
+    public SqlProfile profile(Runnable action) {
+        SqlProfile outer = current.get();
+        SqlProfile profile = new SqlProfile();
+        current.set(profile);
+        try {
+            action.run();
+            return profile;
+        } finally {
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+
+    SqlProfile start() {
+        SqlProfile profile = new SqlProfile();
+        current.set(profile);
+        return profile;
+    }
+
+    void stop() {
+        current.remove();
+    }
+
+    boolean isProfiling() {
+        return current.get() != null;
+    }
+
+    void executed(String sql, int batchSize, long elapsedNanos) {
+        SqlProfile profile = current.get();
+        if (profile != null) {
+            profile.executed(sql, batchSize, elapsedNanos);
+        }
+        if (elapsedNanos >= slowQueryNanos) {
+            log.warn("Медленный запрос: {} мс, строк в пакете {}: {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), batchSize, sql);
+        }
+    }
+
+    void rows(long count) {
+        SqlProfile profile = current.get();
+        if (profile != null) {
+            profile.rows(count);
+        }
+    }
+
+    // Предупреждает о повторах одного запроса больше порога — вероятный N+1
+    void report(String request, SqlProfile profile) {
+        log.debug("SQL для {}: {}", request, profile);
+        for (Map.Entry<String, Integer> repeated : profile.repeatedMoreThan(repeatThreshold).entrySet()) {
+            log.warn("Возможный N+1 в {}: запрос выполнен {} раз: {}", request, repeated.getValue(), repeated.getKey());
+        }
+    }
+}
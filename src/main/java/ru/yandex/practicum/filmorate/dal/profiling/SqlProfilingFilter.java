@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.dal.profiling;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Открывает {@link SqlProfile} на время HTTP-запроса. По завершении предупреждает о
+ * повторяющихся запросах и пишет число SQL-запросов на маршрут в метрику
+ * filmorate.sql.statements (тег uri — шаблон маршрута, как у http.server.requests).
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlProfilingFilter extends OncePerRequestFilter {
+    private final SqlProfiler profiler;
+    private final MeterRegistry registry;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // профиль уже открыт снаружи (тест через MockMvc) — запросы попадут в него
+        return !profiler.isEnabled() || profiler.isProfiling();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlProfile profile = profiler.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            profiler.stop();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            profiler.report(request.getMethod() + " " + request.getRequestURI(), profile);
+            DistributionSummary.builder("filmorate.sql.statements")
+                    .description("Число SQL-запросов на один HTTP-запрос")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri)
+                    .register(registry)
+                    .record(profile.statements());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dal.routing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Метод хранилища только читает и может выполняться на реплике (см. {@link ReplicaReadAspect}).
+ * Чтения, которым нужна свежая копия (загрузка индексов при старте, проверки перед записью),
+ * не помечаются и всегда идут в основную базу.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.dal.routing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Направляет вызовы методов {@link ReplicaRead} в реплику. Поток, закреплённый за основной
+ * базой после записи, и вызовы внутри транзакции читают из основной базы. Проверяется активность
+ * синхронизации, а не только транзакции: при ней соединение привязывается к потоку до конца
+ * области, и соединение реплики досталось бы следующей записи.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaReadAspect {
+
+    @Around("@annotation(ru.yandex.practicum.filmorate.dal.routing.ReplicaRead)")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (RoutingContext.isPinnedToPrimary() || TransactionSynchronizationManager.isSynchronizationActive()) {
+            return joinPoint.proceed();
+        }
+        boolean previous = RoutingContext.useReplica(true);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            RoutingContext.useReplica(previous);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.dal.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * Куда поток сейчас отправляет запросы: в реплику на время вызова метода {@link ReplicaRead}
+ * или только в основную базу, если поток закреплён за ней после записи (read-your-writes).
+ */
+public final class RoutingContext {
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private RoutingContext() {
+    }
+
+    public static boolean isReplica() {
+        return REPLICA.get() != null;
+    }
+
+    // Возвращает прежнее значение, чтобы вложенный вызов мог его восстановить
+    static boolean useReplica(boolean replica) {
+        boolean previous = isReplica();
+        if (replica) {
+            REPLICA.set(Boolean.TRUE);
+        } else {
+            REPLICA.remove();
+        }
+        return previous;
+    }
+
+    // Выполняет action на основной базе, даже если поток сейчас читает из реплики
+    public static <T> T onPrimary(Supplier<T> action) {
+        boolean previous = useReplica(false);
+        try {
+            return action.get();
+        } finally {
+            useReplica(previous);
+        }
+    }
+
+    public static void pinToPrimary() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PINNED.get() != null;
+    }
+
+    public static void clear() {
+        REPLICA.remove();
+        PINNED.remove();
+    }
+}
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.dal.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выбирает пул для очередного соединения: реплики по кругу, пока поток читает через
+ * {@link ReplicaRead}, иначе основную базу. Соединение транзакции берётся один раз при её
+ * начале, поэтому всё внутри транзакции выполняется на основной базе.
+ */
+public final class RoutingDataSource extends AbstractRoutingDataSource {
+    static final String PRIMARY = "primary";
+
+    private final String[] replicas;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private RoutingDataSource(int replicaCount) {
+        this.replicas = new String[replicaCount];
+        for (int i = 0; i < replicaCount; i++) {
+            replicas[i] = "replica-" + i;
+        }
+    }
+
+    // Настройка пулов идёт после конструктора, когда объект уже создан целиком
+    public static RoutingDataSource of(DataSource primary, List<? extends DataSource> replicas) {
+        RoutingDataSource routing = new RoutingDataSource(replicas.size());
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(routing.replicas[i], replicas.get(i));
+        }
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.setLenientFallback(false);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.length == 0 || !RoutingContext.isReplica()) {
+            return PRIMARY;
+        }
+        return replicas[Math.floorMod(next.getAndIncrement(), replicas.length)];
+    }
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.dal.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пулы основной базы и реплик за {@link RoutingDataSource}. Бин DataSource здесь один, поэтому
+ * автоконфигурация Boot свой пул не создаёт, а профилировщик SQL оборачивает маршрутизатор целиком.
+ * Реплики — filmorate.datasource.replicas.urls с учётными данными основной базы; локально это
+ * отдельный пул только для чтения на той же базе H2 (у встроенной H2 нет асинхронной репликации).
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.datasource.replicas.enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 Environment environment,
+                                 MeterRegistry registry,
+                                 @Value("${filmorate.datasource.replicas.urls}") List<String> urls,
+                                 @Value("${filmorate.datasource.replicas.maximum-pool-size:10}") int replicaPoolSize) {
+        HikariDataSource primary = pool(properties, environment, registry, "primary");
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = pool(properties, environment, registry, "replica-" + replicas.size());
+            replica.setJdbcUrl(url);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        log.info("Чтение распределяется по {} репликам: {}", replicas.size(), urls);
+        return RoutingDataSource.of(primary, replicas);
+    }
+
+    // Пул с настройками spring.datasource.* и spring.datasource.hikari.*, как у автоконфигурации Boot
+    private HikariDataSource pool(DataSourceProperties properties, Environment environment, MeterRegistry registry,
+                                  String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        pools.add(pool);
+        return pool;
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
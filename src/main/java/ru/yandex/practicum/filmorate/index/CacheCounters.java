@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики попаданий и промахов кэша в памяти. Только накапливаются, в метрики
+ * их выводит {@link ru.yandex.practicum.filmorate.metrics.CacheMetrics}.
+ */
+public final class CacheCounters {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public void hit() {
+        hits.increment();
+    }
+
+    public void miss() {
+        misses.increment();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хеш-индекс нормализованных email пользователей (без пробелов по краям, в нижнем регистре).
+ * Заполняется при старте и поддерживается UserRepository. Гонки одновременных регистраций
+ * закрывает уникальный индекс users_email_normalized_uq в БД.
+ */
+@Component
+public class EmailIndex {
+    private final Map<String, Long> userByEmail = new ConcurrentHashMap<>();
+    private final Map<Long, String> emailByUser = new ConcurrentHashMap<>();
+
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public void clear() {
+        userByEmail.clear();
+        emailByUser.clear();
+    }
+
+    public void put(long userId, String email) {
+        String normalized = normalize(email);
+        String previous = emailByUser.put(userId, normalized);
+        if (previous != null && !previous.equals(normalized)) {
+            userByEmail.remove(previous, userId);
+        }
+        userByEmail.put(normalized, userId);
+    }
+
+    public void remove(long userId) {
+        String previous = emailByUser.remove(userId);
+        if (previous != null) {
+            userByEmail.remove(previous, userId);
+        }
+    }
+
+    public Optional<Long> findUserId(String email) {
+        return Optional.ofNullable(userByEmail.get(normalize(email)));
+    }
+}
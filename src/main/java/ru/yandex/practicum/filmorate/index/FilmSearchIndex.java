@@ -0,0 +1,425 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Обратный индекс по названию и описанию фильмов для поиска.
+ * Термины — слова из букв и цифр в нижнем регистре (ё приводится к е) длиной от {@value #MIN_TOKEN}.
+ * Словарь отсортирован, поэтому все термины с заданным префиксом — один диапазон skip-list.
+ * Список вхождений термина — отсортированные массивы id фильмов и битов полей (название, описание).
+ * Новые фильмы получают возрастающие id и дописываются в конец массива без копирования,
+ * остальные изменения копируют список целиком. Чтение не берёт блокировок, запись
+ * идёт под монитором индекса.
+ * <p>
+ * Оценка фильма — сумма по словам запроса лучшей оценки среди терминов с этим префиксом:
+ * вес поля (название 3, описание 1) × idf термина, префиксное совпадение — с коэффициентом
+ * {@value #PREFIX_FACTOR}. Итог умножается на 1 + ln(1 + лайки). В выдачу попадают
+ * только фильмы, где нашлись все слова запроса.
+ * <p>
+ * Работа на запрос ограничена: если самое редкое слово встречается больше чем в max-candidates
+ * фильмах, кандидаты берутся по убыванию лайков с отсечением по верхней границе оценки.
+ */
+@Component
+public class FilmSearchIndex {
+    static final int MIN_TOKEN = 2;
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final byte NAME = 1;
+    private static final byte DESCRIPTION = 2;
+    private static final double PREFIX_FACTOR = 0.7;
+    // оценки хранятся в LongIntCounter целыми с таким множителем
+    private static final double SCALE = 1000;
+
+    private final PopularityIndex popularityIndex;
+    private final int minPrefix;
+    private final int maxPrefixTerms;
+    private final int maxCandidates;
+    private volatile Dictionary dictionary = new Dictionary();
+
+    public FilmSearchIndex(PopularityIndex popularityIndex,
+                           @Value("${filmorate.search.min-prefix-length:3}") int minPrefix,
+                           @Value("${filmorate.search.max-prefix-terms:64}") int maxPrefixTerms,
+                           @Value("${filmorate.search.max-candidates:10000}") int maxCandidates) {
+        this.popularityIndex = popularityIndex;
+        this.minPrefix = minPrefix;
+        this.maxPrefixTerms = maxPrefixTerms;
+        this.maxCandidates = maxCandidates;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    public synchronized void index(long filmId, String name, String description) {
+        dictionary.index(filmId, name, description);
+    }
+
+    public synchronized void remove(long filmId) {
+        dictionary.remove(filmId);
+    }
+
+    public long[] search(String query, int limit) {
+        Dictionary current = dictionary;
+        List<String> tokens = new ArrayList<>(tokenize(query).keySet());
+        if (tokens.isEmpty()) {
+            return new long[0];
+        }
+        if (tokens.size() > MAX_QUERY_TOKENS) {
+            tokens = tokens.subList(0, MAX_QUERY_TOKENS);
+        }
+
+        int films = Math.max(1, current.filmCount());
+        List<Expansion[]> expansions = new ArrayList<>(tokens.size());
+        int driver = 0;
+        long driverSize = Long.MAX_VALUE;
+        for (String token : tokens) {
+            Expansion[] terms = current.expand(token, films, token.length() >= minPrefix ? maxPrefixTerms : 0);
+            if (terms.length == 0) {
+                return new long[0];
+            }
+            long size = Arrays.stream(terms).mapToLong(term -> term.postings().size()).sum();
+            if (size < driverSize) {
+                driver = expansions.size();
+                driverSize = size;
+            }
+            expansions.add(terms);
+        }
+        if (driverSize > maxCandidates) {
+            return searchByLikes(expansions, limit);
+        }
+
+        // кандидаты с оценкой — проход по спискам самого редкого слова,
+        // остальные слова проверяются у кандидатов двоичным поиском
+        LongIntCounter candidates = new LongIntCounter((int) Math.min(driverSize, 1 << 16));
+        for (Expansion term : expansions.get(driver)) {
+            PostingList postings = term.postings();
+            for (int i = 0; i < postings.size(); i++) {
+                int score = scaled(term.factor() * weight(postings.fields()[i]));
+                int best = candidates.get(postings.ids()[i]);
+                if (score > best) {
+                    candidates.add(postings.ids()[i], score - best);
+                }
+            }
+        }
+
+        LongIntCounter ranked = new LongIntCounter(Math.min(candidates.size(), 1 << 16));
+        for (long filmId : candidates.keys()) {
+            double score = candidates.get(filmId) / SCALE;
+            for (int token = 0; token < expansions.size() && score > 0; token++) {
+                if (token == driver) {
+                    continue;
+                }
+                double best = 0;
+                for (Expansion term : expansions.get(token)) {
+                    best = Math.max(best, term.factor() * weight(term.postings().fieldsOf(filmId)));
+                }
+                score = best == 0 ? 0 : score + best;
+            }
+            if (score > 0) {
+                ranked.add(filmId, scaled(score * (1 + Math.log1p(popularityIndex.likesOf(filmId)))));
+            }
+        }
+        return ranked.top(limit);
+    }
+
+    /**
+     * Поиск, когда даже самое редкое слово запроса встречается больше чем в max-candidates фильмах.
+     * Фильмы перебираются по убыванию лайков; текстовая оценка не больше суммы лучших оценок слов,
+     * поэтому обход останавливается, когда эта граница с множителем лайков очередного фильма
+     * не дотягивает до limit-й найденной оценки (max-score). Проверяется не больше
+     * max-candidates фильмов, так что частое слово не заставляет обходить весь словарь.
+     */
+    private long[] searchByLikes(List<Expansion[]> expansions, int limit) {
+        if (limit <= 0) {
+            return new long[0];
+        }
+        double maxText = 0;
+        for (Expansion[] terms : expansions) {
+            maxText += Arrays.stream(terms)
+                    .mapToDouble(term -> term.factor() * term.postings().maxWeight())
+                    .max().orElse(0);
+        }
+        double bound = maxText;
+        LongIntCounter ranked = new LongIntCounter(Math.min(maxCandidates, 1 << 16));
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1);
+        int[] checked = new int[1];
+        popularityIndex.forEachByLikes((filmId, likes) -> {
+            double boost = 1 + Math.log1p(likes);
+            if (best.size() >= limit && scaled(bound * boost) < best.peek()) {
+                return false;
+            }
+            if (ranked.get(filmId) != 0) {
+                return true;
+            }
+            double text = textScore(expansions, filmId);
+            if (text > 0) {
+                int score = scaled(text * boost);
+                ranked.add(filmId, score);
+                best.add(score);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            return ++checked[0] < maxCandidates;
+        });
+        return ranked.top(limit);
+    }
+
+    // Оценка фильма по всем словам запроса без учёта лайков; 0 — нашлись не все слова
+    private static double textScore(List<Expansion[]> expansions, long filmId) {
+        double score = 0;
+        for (Expansion[] terms : expansions) {
+            double best = 0;
+            for (Expansion term : terms) {
+                best = Math.max(best, term.factor() * weight(term.postings().fieldsOf(filmId)));
+            }
+            if (best == 0) {
+                return 0;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    private static int scaled(double score) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(score * SCALE));
+    }
+
+    private static int weight(byte fields) {
+        return ((fields & NAME) != 0 ? 3 : 0) + ((fields & DESCRIPTION) != 0 ? 1 : 0);
+    }
+
+    // Термины текста в порядке появления с битами полей, где они встретились
+    static Map<String, Byte> tokenize(String text) {
+        Map<String, Byte> tokens = new LinkedHashMap<>();
+        addTokens(tokens, text, (byte) 0);
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Byte> tokens, String text, byte field) {
+        if (text == null) {
+            return;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= MIN_TOKEN) {
+                    tokens.merge(normalized.substring(start, i), field, (a, b) -> (byte) (a | b));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private record Expansion(PostingList postings, double factor) {
+    }
+
+    /**
+     * Неизменяемый снимок списка вхождений. Ячейки за пределами size могут заполняться
+     * следующими дописываниями, поэтому читаются только первые size элементов.
+     * maxWeight — верхняя граница веса полей по списку: после удалений она может быть завышена.
+     */
+    private record PostingList(long[] ids, byte[] fields, int size, int maxWeight) {
+        static final PostingList EMPTY = new PostingList(new long[0], new byte[0], 0, 0);
+
+        byte fieldsOf(long filmId) {
+            int pos = Arrays.binarySearch(ids, 0, size, filmId);
+            return pos >= 0 ? fields[pos] : 0;
+        }
+
+        PostingList with(long filmId, byte field) {
+            int pos = Arrays.binarySearch(ids, 0, size, filmId);
+            if (pos >= 0) {
+                byte[] updated = Arrays.copyOf(fields, fields.length);
+                updated[pos] |= field;
+                return new PostingList(ids, updated, size, Math.max(maxWeight, weight(updated[pos])));
+            }
+            pos = -pos - 1;
+            if (pos == size && size < ids.length) {
+                ids[size] = filmId;
+                fields[size] = field;
+                return new PostingList(ids, fields, size + 1, Math.max(maxWeight, weight(field)));
+            }
+            int capacity = pos == size ? Math.max(4, size * 2) : size + 1;
+            long[] newIds = new long[capacity];
+            byte[] newFields = new byte[capacity];
+            System.arraycopy(ids, 0, newIds, 0, pos);
+            System.arraycopy(fields, 0, newFields, 0, pos);
+            newIds[pos] = filmId;
+            newFields[pos] = field;
+            System.arraycopy(ids, pos, newIds, pos + 1, size - pos);
+            System.arraycopy(fields, pos, newFields, pos + 1, size - pos);
+            return new PostingList(newIds, newFields, size + 1, Math.max(maxWeight, weight(field)));
+        }
+
+        PostingList without(long filmId) {
+            int pos = Arrays.binarySearch(ids, 0, size, filmId);
+            if (pos < 0) {
+                return this;
+            }
+            long[] newIds = new long[size - 1];
+            byte[] newFields = new byte[size - 1];
+            System.arraycopy(ids, 0, newIds, 0, pos);
+            System.arraycopy(fields, 0, newFields, 0, pos);
+            System.arraycopy(ids, pos + 1, newIds, pos, size - pos - 1);
+            System.arraycopy(fields, pos + 1, newFields, pos, size - pos - 1);
+            return new PostingList(newIds, newFields, size - 1, maxWeight);
+        }
+    }
+
+    private static final class Dictionary {
+        private final ConcurrentSkipListMap<String, PostingList> terms;
+        // термины каждого фильма, чтобы убрать его из списков при изменении
+        private final Map<Long, String[]> filmTerms;
+
+        Dictionary() {
+            this(new ConcurrentSkipListMap<>(), new ConcurrentHashMap<>());
+        }
+
+        Dictionary(ConcurrentSkipListMap<String, PostingList> terms, Map<Long, String[]> filmTerms) {
+            this.terms = terms;
+            this.filmTerms = filmTerms;
+        }
+
+        int filmCount() {
+            return filmTerms.size();
+        }
+
+        void index(long filmId, String name, String description) {
+            remove(filmId);
+            Map<String, Byte> tokens = new LinkedHashMap<>();
+            addTokens(tokens, name, NAME);
+            addTokens(tokens, description, DESCRIPTION);
+            String[] indexed = new String[tokens.size()];
+            int i = 0;
+            for (Map.Entry<String, Byte> token : tokens.entrySet()) {
+                PostingList postings = terms.getOrDefault(token.getKey(), PostingList.EMPTY)
+                        .with(filmId, token.getValue());
+                terms.put(token.getKey(), postings);
+                // строка термина из словаря, а не копия из текста фильма
+                indexed[i++] = terms.ceilingKey(token.getKey());
+            }
+            filmTerms.put(filmId, indexed);
+        }
+
+        void remove(long filmId) {
+            String[] indexed = filmTerms.remove(filmId);
+            if (indexed == null) {
+                return;
+            }
+            for (String term : indexed) {
+                PostingList postings = terms.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                PostingList updated = postings.without(filmId);
+                if (updated.size() == 0) {
+                    terms.remove(term);
+                } else {
+                    terms.put(term, updated);
+                }
+            }
+        }
+
+        Expansion[] expand(String token, int films, int maxTerms) {
+            List<Expansion> result = new ArrayList<>();
+            PostingList exact = terms.get(token);
+            if (exact != null) {
+                result.add(new Expansion(exact, idf(films, exact.size())));
+            }
+            for (Map.Entry<String, PostingList> term
+                    : terms.subMap(token, false, token + Character.MAX_VALUE, false).entrySet()) {
+                if (result.size() >= maxTerms) {
+                    break;
+                }
+                PostingList postings = term.getValue();
+                result.add(new Expansion(postings, idf(films, postings.size()) * PREFIX_FACTOR));
+            }
+            return result.toArray(new Expansion[0]);
+        }
+
+        private static double idf(int films, int documents) {
+            return Math.log(1 + (double) films / Math.max(1, documents));
+        }
+    }
+
+    /**
+     * Полная загрузка: фильмы должны идти по возрастанию id. Списки копятся в обычной хеш-таблице
+     * и при publish одним проходом переносятся в новый словарь, который подменяет текущий целиком.
+     * Изменения, пришедшие во время загрузки, после publish теряются, поэтому загрузка
+     * выполняется при старте.
+     */
+    public final class Loader {
+        private final Map<String, Builder> terms = new HashMap<>();
+        private final Map<Long, String[]> filmTerms = new ConcurrentHashMap<>();
+
+        private Loader() {
+        }
+
+        public void add(long filmId, String name, String description) {
+            Map<String, Byte> tokens = new LinkedHashMap<>();
+            addTokens(tokens, name, NAME);
+            addTokens(tokens, description, DESCRIPTION);
+            String[] indexed = new String[tokens.size()];
+            int i = 0;
+            for (Map.Entry<String, Byte> token : tokens.entrySet()) {
+                Builder builder = terms.computeIfAbsent(token.getKey(), Builder::new);
+                builder.add(filmId, token.getValue());
+                // строка термина из словаря, а не копия из текста фильма
+                indexed[i++] = builder.term;
+            }
+            filmTerms.put(filmId, indexed);
+        }
+
+        public void publish() {
+            TreeMap<String, PostingList> sorted = new TreeMap<>();
+            terms.forEach((term, builder) -> sorted.put(builder.term, builder.build()));
+            Dictionary loaded = new Dictionary(new ConcurrentSkipListMap<>(sorted), filmTerms);
+            synchronized (FilmSearchIndex.this) {
+                dictionary = loaded;
+            }
+        }
+    }
+
+    private static final class Builder {
+        private final String term;
+        private long[] ids = new long[4];
+        private byte[] fields = new byte[4];
+        private int size;
+        private int maxWeight;
+
+        private Builder(String term) {
+            this.term = term;
+        }
+
+        void add(long filmId, byte field) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            ids[size] = filmId;
+            fields[size++] = field;
+            maxWeight = Math.max(maxWeight, weight(field));
+        }
+
+        PostingList build() {
+            return new PostingList(ids, fields, size, maxWeight);
+        }
+    }
+}
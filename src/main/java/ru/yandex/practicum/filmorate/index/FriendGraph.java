@@ -0,0 +1,280 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.AfterCommit;
+import ru.yandex.practicum.filmorate.dal.TransactionOverlay;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Граф дружбы в памяти. Для каждого пользователя хранится отсортированный long[] id друзей
+ * (направленные связи user_id -> friend_id, как в таблице friendships) и обратный список —
+ * кто добавил его в друзья. Массивы неизменяемы: изменение создаёт новую копию массива
+ * одного пользователя (copy-on-write), поэтому читатели работают без блокировок.
+ * Возвращаемые массивы нельзя изменять.
+ * <p>
+ * Изменения внутри транзакции видны только ей самой и переносятся в граф после фиксации
+ * через {@link TransactionOverlay} и {@link AfterCommit}: откаченная связь не попадает в граф, а параллельные читатели
+ * не видят связь раньше, чем её строку в БД.
+ */
+@Component
+public class FriendGraph {
+    private static final long[] NONE = new long[0];
+    // во сколько раз один список должен быть длиннее другого, чтобы перейти на galloping-поиск
+    private static final int GALLOP_RATIO = 32;
+
+    private volatile ConcurrentHashMap<Long, long[]> friends = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Long, long[]> followers = new ConcurrentHashMap<>();
+    private final TransactionOverlay<Pending> overlay = new TransactionOverlay<>(Pending::new, this::publish);
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    public boolean add(long userId, long friendId) {
+        Pending pending = overlay.get(true);
+        if (pending == null) {
+            return addCommitted(userId, friendId);
+        }
+        boolean changed = Arrays.binarySearch(friendsOf(userId), friendId) < 0;
+        pending.put(userId, friendId, true);
+        return changed;
+    }
+
+    public boolean remove(long userId, long friendId) {
+        Pending pending = overlay.get(true);
+        if (pending == null) {
+            return removeCommitted(userId, friendId);
+        }
+        boolean changed = Arrays.binarySearch(friendsOf(userId), friendId) >= 0;
+        pending.put(userId, friendId, false);
+        return changed;
+    }
+
+    public void removeUser(long userId) {
+        for (long friendId : friendsOf(userId)) {
+            remove(userId, friendId);
+        }
+        for (long followerId : followersOf(userId)) {
+            remove(followerId, userId);
+        }
+    }
+
+    public long[] friendsOf(long userId) {
+        long[] committed = friends.getOrDefault(userId, NONE);
+        Pending pending = overlay.get(false);
+        return pending == null ? committed : apply(committed, pending.friends.get(userId));
+    }
+
+    // Пользователи, у которых userId есть в друзьях
+    public long[] followersOf(long userId) {
+        long[] committed = followers.getOrDefault(userId, NONE);
+        Pending pending = overlay.get(false);
+        return pending == null ? committed : apply(committed, pending.followers.get(userId));
+    }
+
+    public int degree(long userId) {
+        return friendsOf(userId).length;
+    }
+
+    public long[] commonFriends(long userId, long otherId) {
+        return intersect(friendsOf(userId), friendsOf(otherId));
+    }
+
+    private boolean addCommitted(long userId, long friendId) {
+        boolean[] changed = new boolean[1];
+        friends.compute(userId, (id, current) -> {
+            long[] updated = insert(current, friendId);
+            changed[0] = updated != current;
+            return updated;
+        });
+        if (changed[0]) {
+            followers.compute(friendId, (id, current) -> insert(current, userId));
+        }
+        return changed[0];
+    }
+
+    private boolean removeCommitted(long userId, long friendId) {
+        boolean[] changed = new boolean[1];
+        friends.computeIfPresent(userId, (id, current) -> {
+            long[] updated = delete(current, friendId);
+            changed[0] = updated != current;
+            return updated.length == 0 ? null : updated;
+        });
+        if (changed[0]) {
+            followers.computeIfPresent(friendId, (id, current) -> {
+                long[] updated = delete(current, userId);
+                return updated.length == 0 ? null : updated;
+            });
+        }
+        return changed[0];
+    }
+
+    private void publish(Pending pending) {
+        pending.friends.forEach((userId, changes) -> changes.forEach((friendId, present) -> {
+            if (present) {
+                addCommitted(userId, friendId);
+            } else {
+                removeCommitted(userId, friendId);
+            }
+        }));
+    }
+
+    private static long[] apply(long[] committed, Map<Long, Boolean> changes) {
+        if (changes == null) {
+            return committed;
+        }
+        long[] result = committed;
+        for (Map.Entry<Long, Boolean> change : changes.entrySet()) {
+            result = change.getValue() ? insert(result, change.getKey()) : delete(result, change.getKey());
+        }
+        return result;
+    }
+
+    static long[] intersect(long[] first, long[] second) {
+        long[] small = first.length <= second.length ? first : second;
+        long[] large = small == first ? second : first;
+        if (small.length == 0) {
+            return NONE;
+        }
+        return (long) small.length * GALLOP_RATIO < large.length
+                ? gallopingIntersect(small, large)
+                : mergeIntersect(small, large);
+    }
+
+    private static long[] mergeIntersect(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                result[count++] = small[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Для каждого элемента короткого списка ищем его в длинном экспоненциальным шагом и бинарным поиском
+    private static long[] gallopingIntersect(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int count = 0;
+        int low = 0;
+        for (long value : small) {
+            int step = 1;
+            int high = low;
+            while (high < large.length && large[high] < value) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int pos = Arrays.binarySearch(large, low, Math.min(high + 1, large.length), value);
+            if (pos >= 0) {
+                result[count++] = value;
+                low = pos + 1;
+            } else {
+                low = -pos - 1;
+            }
+            if (low >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long[] insert(long[] current, long value) {
+        if (current == null || current.length == 0) {
+            return new long[]{value};
+        }
+        int pos = Arrays.binarySearch(current, value);
+        if (pos >= 0) {
+            return current;
+        }
+        int at = -pos - 1;
+        long[] updated = new long[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        updated[at] = value;
+        System.arraycopy(current, at, updated, at + 1, current.length - at);
+        return updated;
+    }
+
+    private static long[] delete(long[] current, long value) {
+        int pos = Arrays.binarySearch(current, value);
+        if (pos < 0) {
+            return current;
+        }
+        long[] updated = new long[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, pos);
+        System.arraycopy(current, pos + 1, updated, pos, current.length - pos - 1);
+        return updated;
+    }
+
+    /**
+     * Полная загрузка графа: связи копятся в растущих массивах, сортируются
+     * один раз и подменяют текущий граф целиком.
+     */
+    public final class Loader {
+        private final Map<Long, Adjacency> pendingFriends = new HashMap<>();
+        private final Map<Long, Adjacency> pendingFollowers = new HashMap<>();
+
+        private Loader() {
+        }
+
+        public void add(long userId, long friendId) {
+            pendingFriends.computeIfAbsent(userId, id -> new Adjacency()).add(friendId);
+            pendingFollowers.computeIfAbsent(friendId, id -> new Adjacency()).add(userId);
+        }
+
+        public void publish() {
+            ConcurrentHashMap<Long, long[]> newFriends = toSorted(pendingFriends);
+            ConcurrentHashMap<Long, long[]> newFollowers = toSorted(pendingFollowers);
+            friends = newFriends;
+            followers = newFollowers;
+        }
+
+        private ConcurrentHashMap<Long, long[]> toSorted(Map<Long, Adjacency> pending) {
+            ConcurrentHashMap<Long, long[]> result = new ConcurrentHashMap<>(Math.max(16, pending.size() * 2));
+            pending.forEach((id, adjacency) -> {
+                long[] ids = Arrays.copyOf(adjacency.ids, adjacency.size);
+                Arrays.sort(ids);
+                result.put(id, ids);
+            });
+            return result;
+        }
+    }
+
+    /**
+     * Связи, изменённые в транзакции: последнее состояние каждой связи (true — есть)
+     * в прямом и обратном направлении.
+     */
+    private static final class Pending {
+        private final Map<Long, Map<Long, Boolean>> friends = new HashMap<>();
+        private final Map<Long, Map<Long, Boolean>> followers = new HashMap<>();
+
+        private void put(long userId, long friendId, boolean present) {
+            friends.computeIfAbsent(userId, id -> new HashMap<>()).put(friendId, present);
+            followers.computeIfAbsent(friendId, id -> new HashMap<>()).put(userId, present);
+        }
+    }
+
+    private static final class Adjacency {
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.index;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рекомендации друзей: знакомые второго уровня, упорядоченные по числу общих друзей.
+ * Обход ограничен: у каждого друга просматривается не больше max-degree связей,
+ * а всего — не больше max-visits, поэтому хабы с огромным числом друзей не раздувают
+ * время и память. Связи друга сверх max-degree прореживаются равномерно по всему списку,
+ * а не обрезаются по первым id, чтобы выборка не смещалась к старым пользователям. Друзья обходятся от менее связанных к более связанным:
+ * у них меньше связей и сильнее сигнал.
+ * <p>
+ * Готовый рейтинг кэшируется для пользователя (Caffeine, не больше max-cached записей с вытеснением
+ * редко используемых) и сбрасывается при изменении его друзей,
+ * а также у всех, кто добавил его в друзья (для них он — друг первого уровня).
+ * Сброс идёт после фиксации, когда связи уже перенесены в {@link FriendGraph}.
+ */
+@Component
+public class FriendSuggestions {
+    private final FriendGraph friendGraph;
+    private final int maxDegree;
+    private final int maxVisits;
+    private final int maxResults;
+
+    private final Cache<Long, long[]> cache;
+    // растёт при каждой инвалидации, чтобы не закэшировать результат, посчитанный до неё
+    private final AtomicLong version = new AtomicLong();
+    private final CacheCounters cacheCounters = new CacheCounters();
+
+    public FriendSuggestions(FriendGraph friendGraph,
+                             @Value("${filmorate.friends.suggestions.max-degree:1000}") int maxDegree,
+                             @Value("${filmorate.friends.suggestions.max-visits:100000}") int maxVisits,
+                             @Value("${filmorate.friends.suggestions.max-results:100}") int maxResults,
+                             @Value("${filmorate.friends.suggestions.max-cached:10000}") int maxCached) {
+        this.friendGraph = friendGraph;
+        this.maxDegree = maxDegree;
+        this.maxVisits = maxVisits;
+        this.maxResults = maxResults;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxCached)
+                .build();
+    }
+
+    public int maxResults() {
+        return maxResults;
+    }
+
+    public CacheCounters cacheCounters() {
+        return cacheCounters;
+    }
+
+    public int cachedCount() {
+        return (int) cache.estimatedSize();
+    }
+
+    public long[] suggest(long userId, int limit) {
+        // в транзакции граф включает её незафиксированные связи: такой результат не кэшируется
+        long[] ranked = TransactionSynchronizationManager.isActualTransactionActive() ? compute(userId) : cached(userId);
+        return ranked.length <= limit ? ranked : Arrays.copyOf(ranked, limit);
+    }
+
+    // Вызывается после фиксации изменения списка друзей userId
+    public void invalidate(long userId) {
+        version.incrementAndGet();
+        cache.invalidate(userId);
+        for (long followerId : friendGraph.followersOf(userId)) {
+            cache.invalidate(followerId);
+        }
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private long[] cached(long userId) {
+        long[] ranked = cache.getIfPresent(userId);
+        if (ranked != null) {
+            cacheCounters.hit();
+            return ranked;
+        }
+        cacheCounters.miss();
+        long before = version.get();
+        long[] computed = compute(userId);
+        // версия проверяется под блокировкой ключа: инвалидация повышает версию до удаления записи,
+        // поэтому либо проверка увидит новую версию, либо удаление уберёт уже положенный результат
+        cache.asMap().computeIfAbsent(userId, key -> version.get() == before ? computed : null);
+        return computed;
+    }
+
+    private long[] compute(long userId) {
+        long[] friends = friendGraph.friendsOf(userId);
+        if (friends.length == 0) {
+            return new long[0];
+        }
+        long[] byDegree = friends.clone();
+        sortByDegree(byDegree);
+
+        LongIntCounter mutual = new LongIntCounter(Math.min(maxVisits, friends.length * 16));
+        int visits = 0;
+        for (long friendId : byDegree) {
+            long[] candidates = friendGraph.friendsOf(friendId);
+            int bound = Math.min(candidates.length, maxDegree);
+            for (int i = 0; i < bound && visits < maxVisits; i++, visits++) {
+                long candidate = candidates[(int) ((long) i * candidates.length / bound)];
+                if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                    mutual.increment(candidate);
+                }
+            }
+            if (visits >= maxVisits) {
+                break;
+            }
+        }
+        return mutual.top(maxResults);
+    }
+
+    private void sortByDegree(long[] ids) {
+        // по возрастанию числа друзей, при равенстве — по id, чтобы обход был детерминированным
+        if (ids.length > 1) {
+            long[][] pairs = new long[ids.length][];
+            for (int i = 0; i < ids.length; i++) {
+                pairs[i] = new long[]{friendGraph.degree(ids[i]), ids[i]};
+            }
+            Arrays.sort(pairs, (first, second) -> first[0] != second[0]
+                    ? Long.compare(first[0], second[0])
+                    : Long.compare(first[1], second[1]));
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = pairs[i][1];
+            }
+        }
+    }
+}
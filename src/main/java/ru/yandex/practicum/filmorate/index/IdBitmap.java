@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Сжатое множество id по схеме Roaring: старшие 16 бит id выбирают блок, в блоке хранятся
+ * младшие 16 бит — отсортированным char[] (до 4096 значений, 2 байта на id) или битовой
+ * картой на 65536 бит (8 КБ, 1 бит на id). Плотные последовательные id из IDENTITY занимают
+ * около бита на id, разреженные — по 2 байта.
+ * Проверка без блокировок: массив блока заменяется копией (copy-on-write), биты карты
+ * меняются атомарно. Изменения идут под монитором объекта. Блок-карта обратно в массив
+ * не превращается. Id больше {@value #MAX_ID} хранятся в обычном множестве.
+ */
+public final class IdBitmap {
+    static final long MAX_ID = 0xFFFF_FFFFL;
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    // блок: char[] или AtomicLongArray, null — пустой блок
+    private volatile AtomicReferenceArray<Object> chunks = new AtomicReferenceArray<>(0);
+    private final Set<Long> overflow = ConcurrentHashMap.newKeySet();
+    private volatile long cardinality;
+
+    public boolean contains(long id) {
+        if (id < 0) {
+            return false;
+        }
+        if (id > MAX_ID) {
+            return overflow.contains(id);
+        }
+        AtomicReferenceArray<Object> current = chunks;
+        int high = (int) (id >>> 16);
+        if (high >= current.length()) {
+            return false;
+        }
+        return contains(current.get(high), (char) id);
+    }
+
+    public synchronized boolean add(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Отрицательный id: " + id);
+        }
+        boolean added = id > MAX_ID ? overflow.add(id) : addToChunk(id);
+        if (added) {
+            cardinality++;
+        }
+        return added;
+    }
+
+    public synchronized boolean remove(long id) {
+        boolean removed;
+        if (id < 0) {
+            removed = false;
+        } else if (id > MAX_ID) {
+            removed = overflow.remove(id);
+        } else {
+            removed = removeFromChunk(id);
+        }
+        if (removed) {
+            cardinality--;
+        }
+        return removed;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    private boolean addToChunk(long id) {
+        int high = (int) (id >>> 16);
+        char low = (char) id;
+        AtomicReferenceArray<Object> current = ensureCapacity(high + 1);
+        Object chunk = current.get(high);
+        if (chunk instanceof AtomicLongArray bits) {
+            long mask = 1L << low;
+            return (bits.getAndUpdate(low >>> 6, word -> word | mask) & mask) == 0;
+        }
+        char[] values = chunk == null ? new char[0] : (char[]) chunk;
+        int pos = Arrays.binarySearch(values, low);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        if (values.length < ARRAY_MAX) {
+            char[] updated = new char[values.length + 1];
+            System.arraycopy(values, 0, updated, 0, pos);
+            updated[pos] = low;
+            System.arraycopy(values, pos, updated, pos + 1, values.length - pos);
+            current.set(high, updated);
+        } else {
+            AtomicLongArray bits = toBitmap(values);
+            bits.set(low >>> 6, bits.get(low >>> 6) | 1L << low);
+            current.set(high, bits);
+        }
+        return true;
+    }
+
+    private boolean removeFromChunk(long id) {
+        AtomicReferenceArray<Object> current = chunks;
+        int high = (int) (id >>> 16);
+        if (high >= current.length()) {
+            return false;
+        }
+        char low = (char) id;
+        Object chunk = current.get(high);
+        if (chunk instanceof AtomicLongArray bits) {
+            long mask = 1L << low;
+            return (bits.getAndUpdate(low >>> 6, word -> word & ~mask) & mask) != 0;
+        }
+        if (!(chunk instanceof char[] values)) {
+            return false;
+        }
+        int pos = Arrays.binarySearch(values, low);
+        if (pos < 0) {
+            return false;
+        }
+        char[] updated = new char[values.length - 1];
+        System.arraycopy(values, 0, updated, 0, pos);
+        System.arraycopy(values, pos + 1, updated, pos, values.length - pos - 1);
+        current.set(high, updated.length == 0 ? null : updated);
+        return true;
+    }
+
+    private AtomicReferenceArray<Object> ensureCapacity(int length) {
+        AtomicReferenceArray<Object> current = chunks;
+        if (length <= current.length()) {
+            return current;
+        }
+        AtomicReferenceArray<Object> grown = new AtomicReferenceArray<>(Math.max(length, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        chunks = grown;
+        return grown;
+    }
+
+    private static boolean contains(Object chunk, char low) {
+        if (chunk instanceof AtomicLongArray bits) {
+            return (bits.get(low >>> 6) & 1L << low) != 0;
+        }
+        return chunk instanceof char[] values && Arrays.binarySearch(values, low) >= 0;
+    }
+
+    private static AtomicLongArray toBitmap(char[] values) {
+        long[] words = new long[BITMAP_WORDS];
+        for (char value : values) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return new AtomicLongArray(words);
+    }
+
+    /**
+     * Полная загрузка: id копятся по блокам без копирования массивов и подменяют текущее
+     * содержимое целиком. Изменения, пришедшие во время загрузки, после publish теряются,
+     * поэтому загрузка выполняется при старте.
+     */
+    public final class Loader {
+        private final Map<Integer, long[]> pending = new HashMap<>();
+        private final Set<Long> pendingOverflow = new HashSet<>();
+
+        private Loader() {
+        }
+
+        public void add(long id) {
+            if (id < 0) {
+                throw new IllegalArgumentException("Отрицательный id: " + id);
+            }
+            if (id > MAX_ID) {
+                pendingOverflow.add(id);
+                return;
+            }
+            char low = (char) id;
+            pending.computeIfAbsent((int) (id >>> 16), high -> new long[BITMAP_WORDS])[low >>> 6] |= 1L << low;
+        }
+
+        public void publish() {
+            int length = pending.keySet().stream().mapToInt(high -> high + 1).max().orElse(0);
+            AtomicReferenceArray<Object> loaded = new AtomicReferenceArray<>(length);
+            long count = pendingOverflow.size();
+            for (Map.Entry<Integer, long[]> entry : pending.entrySet()) {
+                long[] words = entry.getValue();
+                int bits = 0;
+                for (long word : words) {
+                    bits += Long.bitCount(word);
+                }
+                count += bits;
+                loaded.set(entry.getKey(), bits <= ARRAY_MAX ? toArray(words, bits) : new AtomicLongArray(words));
+            }
+            synchronized (IdBitmap.this) {
+                chunks = loaded;
+                overflow.clear();
+                overflow.addAll(pendingOverflow);
+                cardinality = count;
+            }
+        }
+
+        private static char[] toArray(long[] words, int size) {
+            char[] values = new char[size];
+            int pos = 0;
+            for (int word = 0; word < words.length; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[pos++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return values;
+        }
+    }
+}
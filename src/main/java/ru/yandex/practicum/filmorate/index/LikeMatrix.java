@@ -0,0 +1,266 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Лайки пользователей в памяти (отсортированный массив id фильмов на пользователя) для рекомендаций
+ * в духе коллаборативной фильтрации: соседи пользователя — те, у кого больше всего общих
+ * лайков с ним, а рекомендуются фильмы, которые лайкнули соседи, но не он сам.
+ * <p>
+ * Поиск соседей — полный проход по пользователям, разбитый на задачи ForkJoinPool.
+ * Найденные соседи кэшируются и поправляются по мере лайков: при изменении лайка
+ * пользователя U пересчитывается пересечение U с каждым закэшированным пользователем,
+ * лайкнувшим тот же фильм. Соседи самого U считаются заново при следующем запросе.
+ * Поправка приближённая: пользователь, выпавший из соседей, вернётся в них
+ * только после пересчёта, поэтому при переполнении кэш сбрасывается целиком.
+ */
+@Component
+public class LikeMatrix {
+    // столько пользователей обрабатывает одна задача ForkJoin без дальнейшего деления
+    private static final int LEAF_SIZE = 4096;
+
+    private final int maxNeighbors;
+    private final int maxCached;
+
+    private final Map<Long, LikeSet> likes = new ConcurrentHashMap<>();
+    private final Map<Long, Neighbors> neighborsCache = new ConcurrentHashMap<>();
+    private final CacheCounters cacheCounters = new CacheCounters();
+
+    public LikeMatrix(@Value("${filmorate.recommendations.max-neighbors:50}") int maxNeighbors,
+                      @Value("${filmorate.recommendations.max-cached:10000}") int maxCached) {
+        this.maxNeighbors = maxNeighbors;
+        this.maxCached = maxCached;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    public void like(long userId, long filmId) {
+        LikeSet[] before = new LikeSet[1];
+        LikeSet after = likes.compute(userId, (id, current) -> {
+            before[0] = current == null ? LikeSet.EMPTY : current;
+            return before[0].with(filmId);
+        });
+        if (after != before[0]) {
+            refreshNeighbors(userId, filmId, after);
+        }
+    }
+
+    public void unlike(long userId, long filmId) {
+        LikeSet[] before = new LikeSet[1];
+        LikeSet after = likes.computeIfPresent(userId, (id, current) -> {
+            before[0] = current;
+            LikeSet updated = current.without(filmId);
+            return updated.isEmpty() ? null : updated;
+        });
+        if (before[0] != null && after != before[0]) {
+            refreshNeighbors(userId, filmId, after == null ? LikeSet.EMPTY : after);
+        }
+    }
+
+    public void removeUser(long userId) {
+        if (likes.remove(userId) != null) {
+            neighborsCache.clear();
+        }
+    }
+
+    // Удалённый фильм больше не участвует ни в пересечениях, ни в рекомендациях
+    public void removeFilm(long filmId) {
+        boolean removed = false;
+        for (Long userId : likes.keySet()) {
+            LikeSet[] before = new LikeSet[1];
+            LikeSet after = likes.computeIfPresent(userId, (id, current) -> {
+                before[0] = current;
+                LikeSet updated = current.without(filmId);
+                return updated.isEmpty() ? null : updated;
+            });
+            removed |= before[0] != null && after != before[0];
+        }
+        if (removed) {
+            neighborsCache.clear();
+        }
+    }
+
+    public CacheCounters cacheCounters() {
+        return cacheCounters;
+    }
+
+    public int cachedCount() {
+        return neighborsCache.size();
+    }
+
+    public LikeSet likesOf(long userId) {
+        return likes.getOrDefault(userId, LikeSet.EMPTY);
+    }
+
+    /**
+     * До limit id фильмов: счёт фильма — сумма пересечений с соседями, которые его лайкнули.
+     */
+    public long[] recommend(long userId, int limit) {
+        LikeSet own = likesOf(userId);
+        if (own.isEmpty()) {
+            return new long[0];
+        }
+        Neighbors neighbors = neighbors(userId, own);
+        LongIntCounter scores = new LongIntCounter(neighbors.ids().length * 8);
+        for (int i = 0; i < neighbors.ids().length; i++) {
+            likesOf(neighbors.ids()[i]).addMissingTo(own, scores, neighbors.overlaps()[i]);
+        }
+        return scores.top(limit);
+    }
+
+    Neighbors neighbors(long userId, LikeSet own) {
+        Neighbors cached = neighborsCache.get(userId);
+        if (cached != null) {
+            cacheCounters.hit();
+            return cached;
+        }
+        cacheCounters.miss();
+        List<Map.Entry<Long, LikeSet>> users = List.copyOf(likes.entrySet());
+        Neighbors computed = ForkJoinPool.commonPool().invoke(new NeighborSearch(userId, own, users, 0, users.size()));
+        if (neighborsCache.size() >= maxCached) {
+            neighborsCache.clear();
+        }
+        neighborsCache.put(userId, computed);
+        return computed;
+    }
+
+    private void refreshNeighbors(long userId, long filmId, LikeSet updated) {
+        neighborsCache.remove(userId);
+        for (Long otherId : neighborsCache.keySet()) {
+            if (otherId != userId && likesOf(otherId).contains(filmId)) {
+                int overlap = updated.overlap(likesOf(otherId));
+                neighborsCache.computeIfPresent(otherId,
+                        (id, neighbors) -> neighbors.with(userId, overlap, maxNeighbors));
+            }
+        }
+    }
+
+    private Neighbors top(LongIntCounter overlaps) {
+        long[] ids = overlaps.top(maxNeighbors);
+        int[] values = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = overlaps.get(ids[i]);
+        }
+        return new Neighbors(ids, values);
+    }
+
+    /**
+     * Соседи пользователя по убыванию числа общих лайков.
+     */
+    record Neighbors(long[] ids, int[] overlaps) {
+        Neighbors with(long userId, int overlap, int limit) {
+            LongIntCounter counter = new LongIntCounter(ids.length + 1);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != userId) {
+                    counter.add(ids[i], overlaps[i]);
+                }
+            }
+            if (overlap > 0) {
+                counter.add(userId, overlap);
+            }
+            long[] newIds = counter.top(limit);
+            int[] newOverlaps = new int[newIds.length];
+            for (int i = 0; i < newIds.length; i++) {
+                newOverlaps[i] = counter.get(newIds[i]);
+            }
+            return new Neighbors(newIds, newOverlaps);
+        }
+    }
+
+    // ForkJoinTask сериализуем формально: задача живёт только внутри пула и никогда не сериализуется
+    @SuppressWarnings("serial")
+    private final class NeighborSearch extends RecursiveTask<Neighbors> {
+        private final long userId;
+        private final LikeSet own;
+        private final List<Map.Entry<Long, LikeSet>> users;
+        private final int from;
+        private final int to;
+
+        private NeighborSearch(long userId, LikeSet own, List<Map.Entry<Long, LikeSet>> users, int from, int to) {
+            this.userId = userId;
+            this.own = own;
+            this.users = users;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Neighbors compute() {
+            if (to - from <= LEAF_SIZE) {
+                LongIntCounter overlaps = new LongIntCounter(Math.min(to - from, 1024));
+                for (int i = from; i < to; i++) {
+                    Map.Entry<Long, LikeSet> user = users.get(i);
+                    long otherId = user.getKey();
+                    if (otherId != userId) {
+                        int overlap = own.overlap(user.getValue());
+                        if (overlap > 0) {
+                            overlaps.add(otherId, overlap);
+                        }
+                    }
+                }
+                return top(overlaps);
+            }
+            int middle = (from + to) >>> 1;
+            NeighborSearch left = new NeighborSearch(userId, own, users, from, middle);
+            left.fork();
+            Neighbors right = new NeighborSearch(userId, own, users, middle, to).compute();
+            return merge(left.join(), right);
+        }
+
+        private Neighbors merge(Neighbors first, Neighbors second) {
+            LongIntCounter overlaps = new LongIntCounter(first.ids().length + second.ids().length);
+            for (Neighbors part : new Neighbors[]{first, second}) {
+                for (int i = 0; i < part.ids().length; i++) {
+                    overlaps.add(part.ids()[i], part.overlaps()[i]);
+                }
+            }
+            return top(overlaps);
+        }
+    }
+
+    /**
+     * Полная загрузка: пары (пользователь, фильм) должны идти по возрастанию user_id, затем film_id.
+     */
+    public final class Loader {
+        private long currentUser = Long.MIN_VALUE;
+        private long[] films = new long[16];
+        private int count;
+
+        private Loader() {
+            likes.clear();
+            neighborsCache.clear();
+        }
+
+        public void add(long userId, long filmId) {
+            if (userId != currentUser) {
+                flush();
+                currentUser = userId;
+            }
+            if (count == films.length) {
+                films = Arrays.copyOf(films, count * 2);
+            }
+            films[count++] = filmId;
+        }
+
+        public void publish() {
+            flush();
+        }
+
+        private void flush() {
+            if (count > 0) {
+                likes.put(currentUser, LikeSet.of(films, count));
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемое множество id фильмов, которые лайкнул пользователь: отсортированный long[].
+ * Память — 8 байт на лайк независимо от разброса id фильмов в каталоге.
+ * Пересечение двух множеств — слияние отсортированных массивов, а если одно намного
+ * меньше другого — двоичный поиск его элементов в большем.
+ */
+public final class LikeSet {
+    public static final LikeSet EMPTY = new LikeSet(new long[0]);
+
+    // при таком отношении размеров двоичный поиск дешевле слияния
+    private static final int GALLOP_RATIO = 16;
+
+    private final long[] filmIds;
+
+    private LikeSet(long[] filmIds) {
+        this.filmIds = filmIds;
+    }
+
+    // filmIds должны быть отсортированы по возрастанию
+    public static LikeSet of(long[] filmIds, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        long[] ids = new long[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || ids[size - 1] != filmIds[i]) {
+                ids[size++] = filmIds[i];
+            }
+        }
+        return new LikeSet(size == count ? ids : Arrays.copyOf(ids, size));
+    }
+
+    public boolean contains(long filmId) {
+        return Arrays.binarySearch(filmIds, filmId) >= 0;
+    }
+
+    public LikeSet with(long filmId) {
+        int pos = Arrays.binarySearch(filmIds, filmId);
+        if (pos >= 0) {
+            return this;
+        }
+        pos = -pos - 1;
+        long[] updated = new long[filmIds.length + 1];
+        System.arraycopy(filmIds, 0, updated, 0, pos);
+        updated[pos] = filmId;
+        System.arraycopy(filmIds, pos, updated, pos + 1, filmIds.length - pos);
+        return new LikeSet(updated);
+    }
+
+    public LikeSet without(long filmId) {
+        int pos = Arrays.binarySearch(filmIds, filmId);
+        if (pos < 0) {
+            return this;
+        }
+        if (filmIds.length == 1) {
+            return EMPTY;
+        }
+        long[] updated = new long[filmIds.length - 1];
+        System.arraycopy(filmIds, 0, updated, 0, pos);
+        System.arraycopy(filmIds, pos + 1, updated, pos, filmIds.length - pos - 1);
+        return new LikeSet(updated);
+    }
+
+    public boolean isEmpty() {
+        return filmIds.length == 0;
+    }
+
+    public int size() {
+        return filmIds.length;
+    }
+
+    public int overlap(LikeSet other) {
+        long[] small = filmIds.length <= other.filmIds.length ? filmIds : other.filmIds;
+        long[] large = small == filmIds ? other.filmIds : filmIds;
+        if (small.length == 0 || small[small.length - 1] < large[0] || large[large.length - 1] < small[0]) {
+            return 0;
+        }
+        int count = 0;
+        if ((long) small.length * GALLOP_RATIO < large.length) {
+            int from = 0;
+            for (long filmId : small) {
+                int pos = Arrays.binarySearch(large, from, large.length, filmId);
+                if (pos >= 0) {
+                    count++;
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+                if (from == large.length) {
+                    break;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    // Добавляет weight к счёту каждого фильма из этого множества, которого нет в exclude
+    public void addMissingTo(LikeSet exclude, LongIntCounter scores, int weight) {
+        long[] excluded = exclude.filmIds;
+        int j = 0;
+        for (long filmId : filmIds) {
+            while (j < excluded.length && excluded[j] < filmId) {
+                j++;
+            }
+            if (j == excluded.length || excluded[j] != filmId) {
+                scores.add(filmId, weight);
+            }
+        }
+    }
+}
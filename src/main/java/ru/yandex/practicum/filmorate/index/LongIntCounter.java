@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+/**
+ * Счётчик long -> int на открытой адресации с линейным пробированием.
+ * Не создаёт объектов на каждый ключ, в отличие от HashMap&lt;Long, Integer&gt;.
+ * Ключ {@link Long#MIN_VALUE} зарезервирован под пустую ячейку. Не потокобезопасен.
+ */
+public final class LongIntCounter {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int increment(long key) {
+        return add(key, 1);
+    }
+
+    public int add(long key, int delta) {
+        int slot = slot(key, keys);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+            if (size * 2 > keys.length) {
+                grow();
+                slot = slot(key, keys);
+            }
+        }
+        values[slot] += delta;
+        return values[slot];
+    }
+
+    public int get(long key) {
+        int slot = slot(key, keys);
+        return keys[slot] == EMPTY ? 0 : values[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int pos = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                result[pos++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ключи с наибольшими значениями (при равенстве — меньший ключ выше), не более limit штук.
+     * Отбор идёт через кучу размера limit, без сортировки всех ключей.
+     */
+    public long[] top(int limit) {
+        int capacity = Math.min(limit, size);
+        long[] heapKeys = new long[capacity];
+        int[] heapValues = new int[capacity];
+        int heapSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) {
+                continue;
+            }
+            if (heapSize < capacity) {
+                heapKeys[heapSize] = keys[i];
+                heapValues[heapSize] = values[i];
+                siftUp(heapKeys, heapValues, heapSize++);
+            } else if (capacity > 0 && better(keys[i], values[i], heapKeys[0], heapValues[0])) {
+                heapKeys[0] = keys[i];
+                heapValues[0] = values[i];
+                siftDown(heapKeys, heapValues, heapSize);
+            }
+        }
+
+        // извлекаем из кучи худший элемент и кладём его в конец результата
+        long[] result = new long[heapSize];
+        for (int last = heapSize - 1; last >= 0; last--) {
+            result[last] = heapKeys[0];
+            heapKeys[0] = heapKeys[last];
+            heapValues[0] = heapValues[last];
+            siftDown(heapKeys, heapValues, last);
+        }
+        return result;
+    }
+
+    private static boolean better(long key, int value, long otherKey, int otherValue) {
+        return value != otherValue ? value > otherValue : key < otherKey;
+    }
+
+    // Вершина кучи — худший из отобранных элементов
+    private static void siftUp(long[] heapKeys, int[] heapValues, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heapKeys[parent], heapValues[parent], heapKeys[index], heapValues[index])) {
+                return;
+            }
+            swap(heapKeys, heapValues, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] heapKeys, int[] heapValues, int heapSize) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && better(heapKeys[worst], heapValues[worst], heapKeys[left], heapValues[left])) {
+                worst = left;
+            }
+            if (right < heapSize && better(heapKeys[worst], heapValues[worst], heapKeys[right], heapValues[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heapKeys, heapValues, worst, index);
+            index = worst;
+        }
+    }
+
+    private static void swap(long[] heapKeys, int[] heapValues, int first, int second) {
+        long key = heapKeys[first];
+        heapKeys[first] = heapKeys[second];
+        heapKeys[second] = key;
+        int value = heapValues[first];
+        heapValues[first] = heapValues[second];
+        heapValues[second] = value;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], keys);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long key, long[] table) {
+        int mask = table.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,232 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Рейтинг фильмов по количеству лайков в памяти.
+ * Чтение топа не берёт блокировок: это обход упорядоченного skip-list.
+ * Запись блокирует только счётчик конкретного фильма, поэтому лайки разных фильмов не конкурируют.
+ * Порядок совпадает с SQL: лайки по убыванию, затем film_id по возрастанию.
+ * <p>
+ * Кроме общего рейтинга ведутся рейтинги по каждому жанру и году выпуска: фильм стоит
+ * в рейтинге каждого своего жанра и своего года, и лайк переставляет его во всех сразу.
+ * Топ по жанру и году — обход рейтинга года (он короче) с отбором по жанру.
+ */
+@Component
+public class PopularityIndex {
+    public static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private static final Comparator<Rank> ORDER = Comparator
+            .comparingInt(Rank::likes).reversed()
+            .thenComparingLong(Rank::filmId);
+    private static final int[] NO_GENRES = new int[0];
+
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, Set<Rank>> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Rank>> byYear = new ConcurrentHashMap<>();
+
+    /**
+     * Заменяет счётчики лайков. Год и жанры уже зарегистрированных фильмов сохраняются,
+     * фильмы вне карты и пометки об удалении отбрасываются. Изменения, пришедшие во время
+     * перестройки, могут потеряться.
+     */
+    public void rebuild(Map<Long, Integer> likesByFilm) {
+        Map<Long, Counter> previous = new HashMap<>(counters);
+        counters.clear();
+        ranking.clear();
+        byGenre.clear();
+        byYear.clear();
+        likesByFilm.forEach((filmId, likes) -> {
+            Counter counter = new Counter(new Rank(filmId, likes));
+            Counter old = previous.get(filmId);
+            if (old != null && !old.removed) {
+                counter.year = old.year;
+                counter.genres = old.genres;
+            }
+            counters.put(filmId, counter);
+            ranking.add(counter.rank);
+            facetRankings(counter).forEach(rankings -> rankings.add(counter.rank));
+        });
+    }
+
+    /**
+     * Добавляет фильм или меняет его год и жанры по полям фильма, сохраняя число лайков.
+     */
+    public void register(Film film) {
+        int year = film.getReleaseDate() == null ? NO_YEAR : film.getReleaseDate().getYear();
+        int[] genreIds = film.getGenres() == null ? NO_GENRES
+                : film.getGenres().stream().mapToInt(Genre::getId).toArray();
+        register(film.getId(), year, genreIds);
+    }
+
+    /**
+     * Добавляет фильм или меняет его год и жанры, сохраняя число лайков.
+     */
+    public void register(long filmId, int year, int[] genreIds) {
+        Counter counter = counter(filmId);
+        synchronized (counter) {
+            if (counter.removed) {
+                return;
+            }
+            facetRankings(counter).forEach(rankings -> rankings.remove(counter.rank));
+            counter.year = year;
+            counter.genres = genreIds.clone();
+            facetRankings(counter).forEach(rankings -> rankings.add(counter.rank));
+        }
+    }
+
+    /**
+     * Удаляет фильм. Счётчик остаётся в карте помеченным как удалённый: запоздавшие
+     * adjust и register (например, сброс буфера лайков) не вернут фильм в рейтинги.
+     * Пометки снимаются при rebuild; для фильма, которого нет в индексе, ничего не делается.
+     */
+    public void remove(long filmId) {
+        Counter counter = counters.get(filmId);
+        if (counter == null) {
+            return;
+        }
+        synchronized (counter) {
+            counter.removed = true;
+            ranking.remove(counter.rank);
+            facetRankings(counter).forEach(rankings -> rankings.remove(counter.rank));
+        }
+    }
+
+    public void adjust(long filmId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Counter counter = counter(filmId);
+        synchronized (counter) {
+            if (counter.removed) {
+                return;
+            }
+            Rank previous = counter.rank;
+            counter.rank = new Rank(filmId, Math.max(0, previous.likes() + delta));
+            // сначала добавляем новую позицию, затем убираем старую: читатель может увидеть
+            // фильм дважды (дубликаты отбрасываются в top), но не потеряет его
+            ranking.add(counter.rank);
+            ranking.remove(previous);
+            for (Set<Rank> rankings : facetRankings(counter)) {
+                rankings.add(counter.rank);
+                rankings.remove(previous);
+            }
+        }
+    }
+
+    public int likesOf(long filmId) {
+        Counter counter = counters.get(filmId);
+        return counter == null || counter.removed ? 0 : counter.rank.likes();
+    }
+
+    public List<Long> top(int count) {
+        return top(ranking, count, null);
+    }
+
+    /**
+     * Топ с фильтром по жанру и (или) году; null — без фильтра.
+     */
+    public List<Long> top(int count, Integer genreId, Integer year) {
+        if (year != null) {
+            return top(byYear.getOrDefault(year, Set.of()), count, genreId);
+        }
+        if (genreId != null) {
+            return top(byGenre.getOrDefault(genreId, Set.of()), count, null);
+        }
+        return top(count);
+    }
+
+    /**
+     * Обходит фильмы по убыванию лайков, пока visitor возвращает true. Во время перестановки
+     * фильм может встретиться дважды.
+     */
+    public void forEachByLikes(LikesVisitor visitor) {
+        for (Rank rank : ranking) {
+            if (!visitor.visit(rank.filmId(), rank.likes())) {
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LikesVisitor {
+        boolean visit(long filmId, int likes);
+    }
+
+    private List<Long> top(Set<Rank> rankings, int count, Integer genreId) {
+        List<Long> result = new ArrayList<>(Math.min(count, counters.size()));
+        Set<Long> seen = new HashSet<>();
+        for (Rank rank : rankings) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (genreId != null && !hasGenre(rank.filmId(), genreId)) {
+                continue;
+            }
+            if (seen.add(rank.filmId())) {
+                result.add(rank.filmId());
+            }
+        }
+        return result;
+    }
+
+    private boolean hasGenre(long filmId, int genreId) {
+        Counter counter = counters.get(filmId);
+        if (counter == null) {
+            return false;
+        }
+        for (int genre : counter.genres) {
+            if (genre == genreId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Рейтинги жанров и года фильма; вызывается под монитором счётчика
+    private List<Set<Rank>> facetRankings(Counter counter) {
+        List<Set<Rank>> result = new ArrayList<>(counter.genres.length + 1);
+        for (int genre : counter.genres) {
+            result.add(byGenre.computeIfAbsent(genre, key -> new ConcurrentSkipListSet<>(ORDER)));
+        }
+        if (counter.year != NO_YEAR) {
+            result.add(byYear.computeIfAbsent(counter.year, key -> new ConcurrentSkipListSet<>(ORDER)));
+        }
+        return result;
+    }
+
+    private Counter counter(long filmId) {
+        return counters.computeIfAbsent(filmId, id -> {
+            Counter counter = new Counter(new Rank(id, 0));
+            ranking.add(counter.rank);
+            return counter;
+        });
+    }
+
+    private record Rank(long filmId, int likes) {
+    }
+
+    private static final class Counter {
+        private volatile Rank rank;
+        private volatile int year = NO_YEAR;
+        private volatile int[] genres = NO_GENRES;
+        private volatile boolean removed;
+
+        private Counter(Rank rank) {
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.zalando.logbook.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Условие записи запроса в журнал Logbook: на горячих маршрутах пишется только доля запросов.
+ * Маршрут задаётся как «МЕТОД шаблон=доля» (шаблон Ant, например {@code GET /films/*=0.01}),
+ * действует первое совпадение, остальные маршруты пишутся все. Logbook буферизует тело только
+ * у выбранных запросов, поэтому невыбранные не тратят на журнал ничего, кроме этой проверки.
+ * Имя бина заменяет условие Logbook по умолчанию, исключения logbook.predicate при этом действуют.
+ */
+@Slf4j
+@Component("requestCondition")
+public class HttpLogSampling implements Predicate<HttpRequest> {
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final List<Route> routes = new ArrayList<>();
+
+    public HttpLogSampling(@Value("${filmorate.logging.http.sampling:}") List<String> sampling) {
+        for (String entry : sampling) {
+            int space = entry.indexOf(' ');
+            int equals = entry.lastIndexOf('=');
+            if (space < 0 || equals < space) {
+                throw new IllegalArgumentException("Ожидается «МЕТОД шаблон=доля»: " + entry);
+            }
+            double rate = Double.parseDouble(entry.substring(equals + 1).trim());
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Доля должна быть от 0 до 1: " + entry);
+            }
+            routes.add(new Route(entry.substring(0, space).trim(), entry.substring(space + 1, equals).trim(), rate));
+        }
+        if (!routes.isEmpty()) {
+            log.info("Выборочная запись HTTP-запросов: {}", routes);
+        }
+    }
+
+    @Override
+    public boolean test(HttpRequest request) {
+        String path = request.getPath();
+        for (Route route : routes) {
+            if (route.method.equalsIgnoreCase(request.getMethod()) && MATCHER.match(route.pattern, path)) {
+                return route.rate >= 1 || ThreadLocalRandom.current().nextDouble() < route.rate;
+            }
+        }
+        return true;
+    }
+
+    private record Route(String method, String pattern, double rate) {
+        @Override
+        public String toString() {
+            return method + " " + pattern + "=" + rate;
+        }
+    }
+}
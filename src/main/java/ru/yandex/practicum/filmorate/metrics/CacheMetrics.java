@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.index.CacheCounters;
+import ru.yandex.practicum.filmorate.index.FriendSuggestions;
+import ru.yandex.practicum.filmorate.index.LikeMatrix;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Метрики кэшей в памяти в тех же именах, что и у кэшей Spring: cache.gets с тегом
+ * result (hit/miss) и cache.size, тег cache — имя кэша. Для кэша фильмов на Caffeine
+ * дополнительно cache.evictions и cache.puts из его статистики.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMetrics implements MeterBinder {
+    private final FriendSuggestions friendSuggestions;
+    private final LikeMatrix likeMatrix;
+    private final FilmCache filmCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "friend-suggestions", friendSuggestions.cacheCounters(),
+                FriendSuggestions::cachedCount, friendSuggestions);
+        bind(registry, "recommendation-neighbors", likeMatrix.cacheCounters(),
+                LikeMatrix::cachedCount, likeMatrix);
+        CaffeineCacheMetrics.monitor(registry, filmCache.cache(), "films");
+    }
+
+    private static <T> void bind(MeterRegistry registry, String cache, CacheCounters counters,
+                                 ToDoubleFunction<T> size, T owner) {
+        FunctionCounter.builder("cache.gets", counters, CacheCounters::hits)
+                .tag("cache", cache)
+                .tag("result", "hit")
+                .description("Число обращений, найденных в кэше")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", counters, CacheCounters::misses)
+                .tag("cache", cache)
+                .tag("result", "miss")
+                .description("Число обращений, не найденных в кэше")
+                .register(registry);
+        Gauge.builder("cache.size", owner, size)
+                .tag("cache", cache)
+                .description("Число записей в кэше")
+                .register(registry);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таймер на каждый вызов хранилищ (FilmStorage, UserStorage, GenreStorage, MpaStorage):
+ * метрика {@value #METRIC} с тегами storage (интерфейс), method и exception (none при успехе).
+ * Вызовы хранилищем собственных методов изнутри не проходят через прокси и не замеряются.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class StorageMetricsAspect {
+    public static final String METRIC = "filmorate.storage";
+
+    private final MeterRegistry registry;
+    // таймеры успешных вызовов по методу, чтобы не искать их в реестре на каждом вызове
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    @Around("execution(* ru.yandex.practicum.filmorate.storage.*Storage.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long started = System.nanoTime();
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            timer(method, joinPoint.getTarget(), e.getClass().getSimpleName())
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        timers.computeIfAbsent(method, key -> timer(key, joinPoint.getTarget(), "none"))
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private Timer timer(Method method, Object target, String exception) {
+        return Timer.builder(METRIC)
+                .description("Время вызова метода хранилища")
+                .tag("storage", storageName(method, target))
+                .tag("method", method.getName())
+                .tag("exception", exception)
+                .register(registry);
+    }
+
+    // Имя интерфейса хранилища, а не класса реализации: так метрики не зависят от неё
+    private static String storageName(Method method, Object target) {
+        if (method.getDeclaringClass().isInterface()) {
+            return method.getDeclaringClass().getSimpleName();
+        }
+        for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(AopUtils.getTargetClass(target))) {
+            if (type.getPackage() == FilmStorage.class.getPackage()) {
+                return type.getSimpleName();
+            }
+        }
+        return method.getDeclaringClass().getSimpleName();
+    }
+}
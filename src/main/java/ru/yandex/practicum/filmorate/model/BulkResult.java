@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Результат обработки одной строки NDJSON-импорта.
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkResult {
+    private int line;
+    private String status;
+    private Long id;
+    private String error;
+
+    public static BulkResult ok(int line, Long id) {
+        return new BulkResult(line, "OK", id, null);
+    }
+
+    public static BulkResult error(int line, String error) {
+        return new BulkResult(line, "ERROR", null, error);
+    }
+
+    @JsonIgnore
+    public boolean isOk() {
+        return "OK".equals(status);
+    }
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Итоговая строка NDJSON-импорта.
+ */
+@Data
+@AllArgsConstructor
+public class BulkSummary {
+    private long total;
+    private long imported;
+    private long failed;
+    private long elapsedMs;
+    private long rowsPerSecond;
+}
@@ -15,7 +15,7 @@ import java.util.Set;
  * Film.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Film {
 
     Set<Genre> genres;
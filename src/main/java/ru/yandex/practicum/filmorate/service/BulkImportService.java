@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.BulkResult;
+import ru.yandex.practicum.filmorate.model.BulkSummary;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+public interface BulkImportService {
+    BulkSummary importFilms(InputStream body, Consumer<BulkResult> results);
+
+    BulkSummary importUsers(InputStream body, Consumer<BulkResult> results);
+
+    BulkSummary importLikes(InputStream body, Consumer<BulkResult> results);
+
+    BulkSummary importFriendships(InputStream body, Consumer<BulkResult> results);
+}
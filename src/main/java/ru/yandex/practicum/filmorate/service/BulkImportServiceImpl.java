@@ -0,0 +1,338 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.EmailIndex;
+import ru.yandex.practicum.filmorate.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.model.BulkResult;
+import ru.yandex.practicum.filmorate.model.BulkSummary;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validator.FilmValidator;
+import ru.yandex.practicum.filmorate.validator.UserValidator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт из NDJSON (один JSON-объект на строку).
+ * Тело читается построчно, строки копятся в пачки по filmorate.bulk.chunk-size.
+ * Каждая пачка проверяется целиком (справочники и индексы в памяти, один запрос
+ * на существование id) и пишется batch-запросами в одной транзакции.
+ * Результат по каждой строке отдаётся сразу после записи её пачки.
+ */
+@Slf4j
+@Service
+public class BulkImportServiceImpl implements BulkImportService {
+    private static final String CHUNK_FAILED_MESSAGE = "Пачка не записана из-за ошибки сервера, строка не сохранена";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final FilmValidator filmValidator;
+    private final UserValidator userValidator;
+    private final PopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final int chunkSize;
+
+    public BulkImportServiceImpl(ObjectMapper objectMapper,
+                                 Validator validator,
+                                 FilmStorage filmStorage,
+                                 UserStorage userStorage,
+                                 FilmValidator filmValidator,
+                                 UserValidator userValidator,
+                                 PopularityIndex popularityIndex,
+                                 LikeMatrix likeMatrix,
+                                 @Value("${filmorate.bulk.chunk-size:1000}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.filmValidator = filmValidator;
+        this.userValidator = userValidator;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public BulkSummary importFilms(InputStream body, Consumer<BulkResult> results) {
+        return process("фильмов", body, Film.class, results, this::importFilmChunk);
+    }
+
+    @Override
+    public BulkSummary importUsers(InputStream body, Consumer<BulkResult> results) {
+        return process("пользователей", body, User.class, results, this::importUserChunk);
+    }
+
+    @Override
+    public BulkSummary importLikes(InputStream body, Consumer<BulkResult> results) {
+        return process("лайков", body, FilmLike.class, results, this::importLikeChunk);
+    }
+
+    @Override
+    public BulkSummary importFriendships(InputStream body, Consumer<BulkResult> results) {
+        return process("дружб", body, Friendship.class, results, this::importFriendshipChunk);
+    }
+
+    private <T> BulkSummary process(String kind,
+                                    InputStream body,
+                                    Class<T> type,
+                                    Consumer<BulkResult> results,
+                                    Function<List<Line<T>>, List<BulkResult>> importer) {
+        log.info("Начат импорт {}", kind);
+        long started = System.nanoTime();
+        long[] counters = new long[2]; // [0] — записано, [1] — с ошибкой
+        Consumer<BulkResult> counting = result -> {
+            counters[result.isOk() ? 0 : 1]++;
+            results.accept(result);
+        };
+
+        List<Line<T>> chunk = new ArrayList<>(chunkSize);
+        List<BulkResult> parseErrors = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String text;
+            int lineNumber = 0;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(new Line<>(lineNumber, objectMapper.readValue(text, type)));
+                } catch (JsonProcessingException e) {
+                    parseErrors.add(BulkResult.error(lineNumber, "Некорректный JSON: " + e.getOriginalMessage()));
+                }
+                if (chunk.size() + parseErrors.size() >= chunkSize) {
+                    flushChunk(kind, chunk, parseErrors, importer, counting);
+                }
+            }
+            flushChunk(kind, chunk, parseErrors, importer, counting);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        BulkSummary summary = new BulkSummary(counters[0] + counters[1], counters[0], counters[1],
+                elapsedMs, counters[0] * 1000 / elapsedMs);
+        log.info("Импорт {} завершён: {}", kind, summary);
+        return summary;
+    }
+
+    private <T> void flushChunk(String kind,
+                                List<Line<T>> chunk,
+                                List<BulkResult> parseErrors,
+                                Function<List<Line<T>>, List<BulkResult>> importer,
+                                Consumer<BulkResult> results) {
+        List<BulkResult> chunkResults;
+        try {
+            chunkResults = chunk.isEmpty() ? new ArrayList<>() : new ArrayList<>(importer.apply(chunk));
+        } catch (RuntimeException e) {
+            // транзакция пачки откатилась целиком, поэтому все её строки считаются неуспешными
+            // текст исключения (SQL, имена ограничений) клиенту не отдаётся, он только в логе
+            log.error("Не удалось записать пачку {} из {} строк", kind, chunk.size(), e);
+            chunkResults = chunk.stream()
+                    .map(line -> BulkResult.error(line.number(), CHUNK_FAILED_MESSAGE))
+                    .collect(Collectors.toList());
+        }
+        chunkResults.addAll(parseErrors);
+        chunkResults.sort(Comparator.comparingInt(BulkResult::getLine));
+        chunkResults.forEach(results);
+        chunk.clear();
+        parseErrors.clear();
+    }
+
+    private List<BulkResult> importFilmChunk(List<Line<Film>> lines) {
+        List<BulkResult> results = new ArrayList<>(lines.size());
+        List<Line<Film>> valid = new ArrayList<>(lines.size());
+        for (Line<Film> line : lines) {
+            Optional<String> error = validateFilm(line.value());
+            if (error.isPresent()) {
+                results.add(BulkResult.error(line.number(), error.get()));
+            } else {
+                valid.add(line);
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        List<Film> created = filmStorage.createAll(valid.stream().map(Line::value).toList());
+        for (int i = 0; i < created.size(); i++) {
+            Long id = created.get(i).getId();
+            popularityIndex.register(created.get(i));
+            results.add(BulkResult.ok(valid.get(i).number(), id));
+        }
+        return results;
+    }
+
+    private List<BulkResult> importUserChunk(List<Line<User>> lines) {
+        List<BulkResult> results = new ArrayList<>(lines.size());
+        List<Line<User>> valid = new ArrayList<>(lines.size());
+        Set<String> chunkEmails = new HashSet<>();
+        for (Line<User> line : lines) {
+            User user = line.value();
+            Optional<String> error = validateUser(user);
+            // занятость email в БД проверяет валидатор, здесь — повтор внутри пачки
+            if (error.isEmpty() && !chunkEmails.add(EmailIndex.normalize(user.getEmail()))) {
+                error = Optional.of(UserValidator.emailInUse(user.getEmail()));
+            }
+            if (error.isPresent()) {
+                results.add(BulkResult.error(line.number(), error.get()));
+            } else {
+                valid.add(line);
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        List<User> created = userStorage.createAll(valid.stream().map(Line::value).toList());
+        for (int i = 0; i < created.size(); i++) {
+            results.add(BulkResult.ok(valid.get(i).number(), created.get(i).getId()));
+        }
+        return results;
+    }
+
+    private List<BulkResult> importLikeChunk(List<Line<FilmLike>> lines) {
+        Set<Long> films = filmStorage.findExistingIds(lines.stream()
+                .map(line -> line.value().getFilmId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        Set<Long> users = userStorage.findExistingIds(lines.stream()
+                .map(line -> line.value().getUserId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        List<BulkResult> results = new ArrayList<>(lines.size());
+        List<FilmLike> valid = new ArrayList<>(lines.size());
+        List<Integer> validLines = new ArrayList<>(lines.size());
+        for (Line<FilmLike> line : lines) {
+            FilmLike like = line.value();
+            if (!films.contains(like.getFilmId())) {
+                results.add(BulkResult.error(line.number(), "Фильм с id = " + like.getFilmId() + " не найден"));
+            } else if (!users.contains(like.getUserId())) {
+                results.add(BulkResult.error(line.number(),
+                        "Пользователь с id = " + like.getUserId() + " не найден"));
+            } else {
+                valid.add(like);
+                validLines.add(line.number());
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        Map<Long, Integer> deltas = filmStorage.applyLikes(valid, List.of());
+        deltas.forEach(popularityIndex::adjust);
+        valid.forEach(like -> likeMatrix.like(like.getUserId(), like.getFilmId()));
+        validLines.forEach(number -> results.add(BulkResult.ok(number, null)));
+        return results;
+    }
+
+    private List<BulkResult> importFriendshipChunk(List<Line<Friendship>> lines) {
+        Set<Long> ids = new HashSet<>();
+        lines.forEach(line -> {
+            ids.add(line.value().getUserId());
+            ids.add(line.value().getFriendId());
+        });
+        ids.remove(null);
+        Set<Long> users = userStorage.findExistingIds(ids);
+
+        List<BulkResult> results = new ArrayList<>(lines.size());
+        List<Friendship> valid = new ArrayList<>(lines.size());
+        List<Integer> validLines = new ArrayList<>(lines.size());
+        for (Line<Friendship> line : lines) {
+            Friendship friendship = line.value();
+            if (!users.contains(friendship.getUserId())) {
+                results.add(BulkResult.error(line.number(),
+                        "Пользователь с id = " + friendship.getUserId() + " не найден"));
+            } else if (!users.contains(friendship.getFriendId())) {
+                results.add(BulkResult.error(line.number(),
+                        "Пользователь с id = " + friendship.getFriendId() + " не найден"));
+            } else if (friendship.getUserId().equals(friendship.getFriendId())) {
+                results.add(BulkResult.error(line.number(), "Пользователь не может добавить самого себя в друзья"));
+            } else {
+                valid.add(friendship);
+                validLines.add(line.number());
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        userStorage.addFriends(valid);
+        validLines.forEach(number -> results.add(BulkResult.ok(number, null)));
+        return results;
+    }
+
+    // Те же проверки, что и в API: аннотации модели (как @Valid в контроллере), затем общий валидатор
+    private Optional<String> validateFilm(Film film) {
+        Optional<String> violation = violations(film);
+        if (violation.isPresent()) {
+            return violation;
+        }
+        try {
+            filmValidator.validateNew(film);
+        } catch (ValidationException | NotFoundException e) {
+            return Optional.of(e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private Optional<String> validateUser(User user) {
+        Optional<String> violation = violations(user);
+        if (violation.isPresent()) {
+            return violation;
+        }
+        try {
+            userValidator.validateNew(user);
+        } catch (ValidationException | DuplicatedDataException e) {
+            return Optional.of(e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private <T> Optional<String> violations(T value) {
+        Set<ConstraintViolation<T>> violations = validator.validate(value);
+        if (violations.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; ")));
+    }
+
+    private record Line<T>(int number, T value) {
+    }
+}
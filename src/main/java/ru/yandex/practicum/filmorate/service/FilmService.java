@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 public interface FilmService {
     Film create(Film film);
@@ -17,7 +18,15 @@ public interface FilmService {
 
     void removeLike(Long filmId, Long userId);
 
-    Collection<Film> getPopularFilms(int count);
+    Collection<Film> getPopularFilms(int count, Integer genreId, Integer year);
+
+    Collection<Film> getRecommendations(Long userId, int limit);
+
+    Collection<Film> search(String query, int limit);
 
     Collection<Film> findAll();
+
+    Collection<Film> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<Film> action);
 }
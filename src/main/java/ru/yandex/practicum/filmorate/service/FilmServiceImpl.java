@@ -1,137 +1,162 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MpaRating;
-import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
-import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validator.FilmValidator;
+import ru.yandex.practicum.filmorate.validator.PageValidator;
 
-import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FilmServiceImpl implements FilmService {
+    private static final int MAX_RECOMMENDATIONS = 100;
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final GenreStorage genreStorage;
-    private final MpaStorage mpaStorage;
+    private final PopularityIndex popularityIndex;
+    private final LikeWriteBuffer likeBuffer;
+    private final LikeMatrix likeMatrix;
+    private final EntityVersions versions;
+    private final FilmSearchIndex searchIndex;
+    private final FilmValidator filmValidator;
+
+    @PostConstruct
+    public void loadLikeMatrix() {
+        LikeMatrix.Loader loader = likeMatrix.loader();
+        filmStorage.streamLikes(like -> loader.add(like.getUserId(), like.getFilmId()));
+        loader.publish();
+        log.info("Лайки пользователей загружены для рекомендаций");
+    }
 
     public Collection<Film> findAll() {
-        log.info("Запрос на получение всех фильмов");
+        log.debug("Запрос на получение всех фильмов");
         Collection<Film> films = filmStorage.findAll();
-        log.info("Найдено {} фильмов", films.size());
-
-        if (films.isEmpty()) {
-            return films;
-        }
-
-
-        Set<Long> filmIds = films.stream()
-                .map(Film::getId)
-                .collect(Collectors.toSet());
-
-
-        Map<Long, Set<Genre>> genresByFilmId = genreStorage.getGenresForFilms(filmIds);
-
-
-        films.forEach(film ->
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), Set.of()))
-        );
+        films.forEach(this::withPendingLikes);
+        log.debug("Найдено {} фильмов", films.size());
+        return films;
+    }
 
-        log.info("Фильмы обогащены жанрами");
+    public Collection<Film> findPage(Long afterId, int limit) {
+        log.debug("Запрос страницы фильмов после ID {} размером {}", afterId, limit);
+        PageValidator.validLimit(limit);
+        Collection<Film> films = filmStorage.findPage(afterId, limit);
+        films.forEach(this::withPendingLikes);
+        log.debug("Найдено {} фильмов", films.size());
         return films;
     }
 
+    public void streamAll(Consumer<Film> action) {
+        log.debug("Запрос на потоковую выдачу всех фильмов");
+        long[] count = new long[1];
+        filmStorage.streamAll(film -> {
+            action.accept(withPendingLikes(film));
+            count[0]++;
+        });
+        log.debug("Выдано {} фильмов", count[0]);
+    }
+
     public Film create(Film film) {
-        log.info("Запрос на создание нового фильма: {}", film);
+        log.debug("Запрос на создание нового фильма: {}", film);
 
         // проверяем выполнение необходимых условий
-        validName(film);
-        validDescription(film);
-        validDuration(film);
-        validReleaseDate(film);
-        validateMpaAndGenre(film);
+        filmValidator.validateNew(film);
         Film createdFilm = filmStorage.create(film);
-        log.info("Фильм успешно создан: {}", createdFilm);
+        popularityIndex.register(createdFilm);
+        log.info("Создан фильм ID {}", createdFilm.getId());
+        log.debug("Созданный фильм: {}", createdFilm);
         return createdFilm;
     }
 
     public Film update(Film newFilm) {
-        log.info("Запрос на обновление фильма: {}", newFilm);
+        log.debug("Запрос на обновление фильма: {}", newFilm);
         if (newFilm.getId() == null) {
             String errorMessage = "ID фильма не должен быть пустым";
             log.error("Ошибка валидации: {}", errorMessage);
             throw new ValidationException(errorMessage);
         }
-        Film existingFilm = findFilmOrThrow(newFilm.getId());
-        log.debug("Найден фильм для обновления: {}", existingFilm);
-        validateMpaAndGenre(newFilm);
-
-        if (newFilm.getDescription() != null) {
-            validDescription(newFilm);
-        }
-        if (newFilm.getReleaseDate() != null) {
-            validReleaseDate(newFilm);
-        }
-        if (newFilm.getDuration() != null) {
-            validDuration(newFilm);
-        }
+        requireFilm(newFilm.getId());
+        filmValidator.validateUpdate(newFilm);
 
         Film updatedFilm = filmStorage.update(newFilm);
-        log.info("Фильм успешно обновлен: {}", updatedFilm);
+        popularityIndex.register(updatedFilm);
+        log.info("Обновлён фильм ID {}", updatedFilm.getId());
+        log.debug("Обновлённый фильм: {}", updatedFilm);
         return updatedFilm;
     }
 
     public void delete(Long id) {
-        log.info("Запрос на удаление фильма с ID: {}", id);
-        findFilmOrThrow(id);
+        log.debug("Запрос на удаление фильма с ID: {}", id);
+        requireFilm(id);
         filmStorage.delete(id);
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.discardFilm(id);
+        }
+        popularityIndex.remove(id);
+        likeMatrix.removeFilm(id);
         log.info("Фильм с ID {} успешно удален", id);
     }
 
     public Film getFilmById(Long id) {
-        log.info("Запрос фильма по ID: {}", id);
-        Film film = findFilmOrThrow(id);
-        log.info("Найден фильм: {}", film);
+        log.debug("Запрос фильма по ID: {}", id);
+        Film film = withPendingLikes(findFilmOrThrow(id));
+        log.debug("Найден фильм: {}", film);
         return film;
     }
 
     public void addLike(Long filmId, Long userId) {
-        log.info("Запрос на добавление лайка фильму {} от пользователя {}", filmId, userId);
+        log.debug("Запрос на добавление лайка фильму {} от пользователя {}", filmId, userId);
 
-        findFilmOrThrow(filmId);
-        findUserOrThrow(userId);
+        requireFilm(filmId);
+        requireUser(userId);
 
-        filmStorage.addLike(filmId, userId);
-        log.info("Лайк успешно добавлен фильму {} от пользователя {}", filmId, userId);
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.add(filmId, userId);
+            // отложенный лайк виден в ответах сразу, до записи в БД
+            versions.filmChanged(filmId);
+        } else if (filmStorage.addLike(filmId, userId)) {
+            popularityIndex.adjust(filmId, 1);
+        }
+        likeMatrix.like(userId, filmId);
+        log.debug("Лайк успешно добавлен фильму {} от пользователя {}", filmId, userId);
     }
 
     // Удаление лайка
     public void removeLike(Long filmId, Long userId) {
-        log.info("Запрос на удаление лайка у фильма {} от пользователя {}", filmId, userId);
+        log.debug("Запрос на удаление лайка у фильма {} от пользователя {}", filmId, userId);
 
-        findFilmOrThrow(filmId);
-        findUserOrThrow(userId);
+        requireFilm(filmId);
+        requireUser(userId);
 
-        filmStorage.removeLike(filmId, userId);
-        log.info("Лайк успешно удалён у фильма {} от пользователя {}", filmId, userId);
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.remove(filmId, userId);
+            versions.filmChanged(filmId);
+        } else if (filmStorage.removeLike(filmId, userId)) {
+            popularityIndex.adjust(filmId, -1);
+        }
+        likeMatrix.unlike(userId, filmId);
+        log.debug("Лайк успешно удалён у фильма {} от пользователя {}", filmId, userId);
     }
 
-    public Collection<Film> getPopularFilms(int count) {
-        log.info("Запрос {} популярных фильмов", count);
+    public Collection<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        log.debug("Запрос {} популярных фильмов, жанр {}, год {}", count, genreId, year);
 
         if (count <= 0) {
             String errorMessage = "Количество фильмов должно быть положительным числом: " + count;
@@ -139,63 +164,64 @@ public class FilmServiceImpl implements FilmService {
             throw new IllegalArgumentException(errorMessage);
         }
 
-        // Сначала достаем фильмы
-        Collection<Film> films = filmStorage.getPopularFilms(count);
-        log.info("Найдено {} популярных фильмов", films.size());
-
-        if (films.isEmpty()) {
-            return films;
+        if (genreId != null && genreStorage.findById(genreId).isEmpty()) {
+            String errorMessage = "Жанр с id=" + genreId + " не найден";
+            log.error(errorMessage);
+            throw new NotFoundException(errorMessage);
         }
 
-
-        Set<Long> filmIds = films.stream()
-                .map(Film::getId)
-                .collect(Collectors.toSet());
-
-
-        Map<Long, Set<Genre>> genresByFilmId = genreStorage.getGenresForFilms(filmIds);
-
-
-        films.forEach(film ->
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), Set.of()))
-        );
-
-        log.info("Популярные фильмы обогащены жанрами");
+        // Топ берётся из рейтинга в памяти, из БД читаются только сами фильмы по id
+        Collection<Film> films = filmStorage.findByIds(popularityIndex.top(count, genreId, year));
+        films.forEach(this::withPendingLikes);
+        log.debug("Найдено {} популярных фильмов", films.size());
         return films;
     }
 
+    public Collection<Film> getRecommendations(Long userId, int limit) {
+        log.debug("Запрос {} рекомендаций фильмов для пользователя {}", limit, userId);
+        requireUser(userId);
 
-    private void validReleaseDate(Film film) {
-        if (film.getReleaseDate() == null || !LocalDate.of(1895, 12, 28)
-                .isBefore(film.getReleaseDate())) {
-            String errorMessage = "Дата релиза должна быть после 28 декабря 1895 года: " + film;
+        if (limit <= 0 || limit > MAX_RECOMMENDATIONS) {
+            String errorMessage = "Количество рекомендаций должно быть от 1 до " + MAX_RECOMMENDATIONS + ": " + limit;
             log.error("Ошибка валидации: {}", errorMessage);
             throw new ValidationException(errorMessage);
         }
+
+        long[] ids = likeMatrix.recommend(userId, limit);
+        Collection<Film> films = filmStorage.findByIds(Arrays.stream(ids).boxed().toList());
+        films.forEach(this::withPendingLikes);
+        log.debug("Найдено {} рекомендаций фильмов для пользователя {}", films.size(), userId);
+        return films;
     }
 
-    private void validName(Film film) {
-        if (film.getName() == null || film.getName().isBlank()) {
-            String errorMessage = "Не указано название фильма: " + film;
+    public Collection<Film> search(String query, int limit) {
+        log.debug("Поиск фильмов по запросу '{}', не более {}", query, limit);
+
+        if (query == null || query.isBlank()) {
+            String errorMessage = "Поисковый запрос не должен быть пустым";
             log.error("Ошибка валидации: {}", errorMessage);
             throw new ValidationException(errorMessage);
         }
-    }
-
-    private void validDescription(Film film) {
-        if (film.getDescription() != null && film.getDescription().length() > 200) {
-            String errorMessage = "Превышено максимальное количество символов в описании (макс. 200): " + film;
+        if (limit <= 0 || limit > MAX_SEARCH_RESULTS) {
+            String errorMessage = "Количество результатов должно быть от 1 до " + MAX_SEARCH_RESULTS + ": " + limit;
             log.error("Ошибка валидации: {}", errorMessage);
             throw new ValidationException(errorMessage);
         }
+
+        long[] ids = searchIndex.search(query, limit);
+        Collection<Film> films = filmStorage.findByIds(Arrays.stream(ids).boxed().toList());
+        films.forEach(this::withPendingLikes);
+        log.debug("По запросу '{}' найдено {} фильмов", query, films.size());
+        return films;
     }
 
-    private void validDuration(Film film) {
-        if (film.getDuration() == null || film.getDuration() <= 0) {
-            String errorMessage = "Продолжительность фильма должна быть положительным числом: " + film;
-            log.error("Ошибка валидации: {}", errorMessage);
-            throw new ValidationException(errorMessage);
+
+    // Лайки из буфера отложенной записи, ещё не попавшие в БД
+    private Film withPendingLikes(Film film) {
+        if (likeBuffer.isEnabled()) {
+            film.setLikesCount(film.getLikesCount() + likeBuffer.pendingDelta(film.getId()));
         }
+        return film;
     }
 
     private Film findFilmOrThrow(Long filmId) {
@@ -207,33 +233,20 @@ public class FilmServiceImpl implements FilmService {
                 });
     }
 
-    private User findUserOrThrow(Long userId) {
-        log.debug("Поиск пользователя по ID: {}", userId);
-        return userStorage.getUserById(userId)
-                .orElseThrow(() -> {
-                    String errorMessage = "Пользователь с id = " + userId + " не найден";
-                    log.error(errorMessage);
-                    return new NotFoundException(errorMessage);
-                });
+    // Проверка по индексу id в памяти: строка фильма для этого не читается
+    private void requireFilm(Long filmId) {
+        if (!filmStorage.exists(filmId)) {
+            String errorMessage = "Фильм с id = " + filmId + " не найден";
+            log.error(errorMessage);
+            throw new NotFoundException(errorMessage);
+        }
     }
 
-    private Film validateMpaAndGenre(Film film) {
-        MpaRating mpa = mpaStorage.findById(film.getMpaRating().getId())
-                .orElseThrow(() -> new NotFoundException("MPA с id=" + film.getMpaRating().getId() + " не найден"));
-        film.setMpaRating(mpa);
-
-        Set<Genre> genres = film.getGenres() == null
-                ? Set.of()
-                : film.getGenres();
-
-        genres.forEach(g ->
-                genreStorage.findById(g.getId())
-                        .orElseThrow(() ->
-                                new NotFoundException("Жанр с id=" + g.getId() + " не найден")
-                        )
-        );
-        film.setGenres(genres);
-
-        return film;
+    private void requireUser(Long userId) {
+        if (!userStorage.exists(userId)) {
+            String errorMessage = "Пользователь с id = " + userId + " не найден";
+            log.error(errorMessage);
+            throw new NotFoundException(errorMessage);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Отложенная запись лайков (включается filmorate.likes.write-behind.enabled).
+ * Лайки и снятия лайков копятся в ограниченном буфере, где для каждой пары (фильм, пользователь)
+ * хранится только последнее желаемое состояние. Буфер сбрасывается пакетом через
+ * FilmStorage.applyLikes при достижении batch-size или по таймеру flush-interval.
+ * <p>
+ * До сброса изменения считаются оптимистично (лайк считается новым). Буфер сразу переносит их
+ * в PopularityIndex и в overlay по фильмам, поэтому чтения видят свои записи. После сброса
+ * рейтинг поправляется на разницу между фактическим и оптимистичным изменением.
+ */
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+    private final FilmStorage filmStorage;
+    private final PopularityIndex popularityIndex;
+    private final boolean enabled;
+    private final int maxPending;
+    private final int batchSize;
+
+    // Запись в буфер берёт общую блокировку, подмена буфера при сбросе — эксклюзивную
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // Сброс пишет в БД под блокировкой: ReentrantLock, а не synchronized, чтобы виртуальный
+    // поток, ждущий ответа БД, не занимал поток-носитель
+    private final Lock flushLock = new ReentrantLock();
+    private final Map<Long, Integer> overlay = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flusher;
+    private volatile Map<FilmLike, Pending> pending = new ConcurrentHashMap<>();
+    private volatile Map<FilmLike, Pending> flushing = Map.of();
+
+    public LikeWriteBuffer(FilmStorage filmStorage,
+                           PopularityIndex popularityIndex,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.max-pending:10000}") int maxPending,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.filmStorage = filmStorage;
+        this.popularityIndex = popularityIndex;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        ThreadFactory threads = virtualThreads
+                ? Thread.ofVirtual().name("like-write-behind").factory()
+                : Thread.ofPlatform().name("like-write-behind").daemon().factory();
+        this.flusher = Executors.newSingleThreadExecutor(threads);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Возвращает true, если лайк (оптимистично) изменил состояние
+    public boolean add(long filmId, long userId) {
+        return enqueue(new FilmLike(filmId, userId), true);
+    }
+
+    public boolean remove(long filmId, long userId) {
+        return enqueue(new FilmLike(filmId, userId), false);
+    }
+
+    // Изменение количества лайков фильма, ещё не записанное в БД
+    public int pendingDelta(long filmId) {
+        return overlay.getOrDefault(filmId, 0);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Отбрасывает отложенные лайки удалённого фильма. Вызывается после фиксации удаления.
+     * Ждёт текущий сброс, чтобы он не вернул overlay фильма после очистки.
+     */
+    public void discardFilm(long filmId) {
+        int discarded;
+        flushLock.lock();
+        swapLock.writeLock().lock();
+        try {
+            int before = pending.size();
+            pending.keySet().removeIf(like -> like.getFilmId() == filmId);
+            discarded = before - pending.size();
+            overlay.remove(filmId);
+        } finally {
+            swapLock.writeLock().unlock();
+            flushLock.unlock();
+        }
+        if (discarded > 0) {
+            log.debug("Отброшено {} отложенных изменений лайков удалённого фильма {}", discarded, filmId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.write-behind.flush-interval:PT1S}")
+    public void flushOnSchedule() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        Map<FilmLike, Pending> batch;
+        swapLock.writeLock().lock();
+        try {
+            batch = pending;
+            if (batch.isEmpty()) {
+                return;
+            }
+            flushing = batch;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        try {
+            List<FilmLike> added = new ArrayList<>();
+            List<FilmLike> removed = new ArrayList<>();
+            Map<Long, Integer> optimistic = new HashMap<>();
+            batch.forEach((like, state) -> {
+                (state.liked() ? added : removed).add(like);
+                optimistic.merge(like.getFilmId(), state.delta(), Integer::sum);
+            });
+
+            Map<Long, Integer> actual = filmStorage.applyLikes(added, removed);
+
+            Set<Long> films = new HashSet<>(optimistic.keySet());
+            films.addAll(actual.keySet());
+            for (Long filmId : films) {
+                int expected = optimistic.getOrDefault(filmId, 0);
+                popularityIndex.adjust(filmId, actual.getOrDefault(filmId, 0) - expected);
+                changeOverlay(filmId, -expected);
+            }
+            log.debug("Записано {} изменений лайков, затронуто {} фильмов", batch.size(), films.size());
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать {} изменений лайков, они возвращены в буфер", batch.size(), e);
+            requeue(batch);
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    private boolean enqueue(FilmLike like, boolean liked) {
+        int[] delta = new int[1];
+        swapLock.readLock().lock();
+        try {
+            pending.compute(like, (key, previous) -> {
+                boolean before = previous != null ? previous.liked() : assumedState(key, liked);
+                delta[0] = before == liked ? 0 : (liked ? 1 : -1);
+                int accumulated = previous == null ? 0 : previous.delta();
+                return new Pending(liked, accumulated + delta[0]);
+            });
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        if (delta[0] != 0) {
+            changeOverlay(like.getFilmId(), delta[0]);
+            popularityIndex.adjust(like.getFilmId(), delta[0]);
+        }
+        int size = pending.size();
+        if (size >= maxPending) {
+            // буфер переполнен: пишущий поток сам сбрасывает его, это и есть обратное давление
+            flush();
+        } else if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+        return delta[0] != 0;
+    }
+
+    // Состояние пары до события: берём из сбрасываемого пакета, иначе считаем, что событие его меняет
+    private boolean assumedState(FilmLike like, boolean liked) {
+        Pending inFlight = flushing.get(like);
+        return inFlight != null ? inFlight.liked() : !liked;
+    }
+
+    private void requeue(Map<FilmLike, Pending> batch) {
+        swapLock.readLock().lock();
+        try {
+            batch.forEach((like, state) -> pending.merge(like, state,
+                    (newer, failed) -> new Pending(newer.liked(), newer.delta() + failed.delta())));
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void changeOverlay(long filmId, int delta) {
+        if (delta != 0) {
+            overlay.merge(filmId, delta, (current, change) -> current + change == 0 ? null : current + change);
+        }
+    }
+
+    private record Pending(boolean liked, int delta) {
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.Map;
+
+/**
+ * Периодически сверяет films.likes_count с таблицей film_like и исправляет расхождения.
+ * После исправления рейтинг популярности перестраивается по film_like с учётом ещё
+ * не записанных лайков из буфера. Первый запуск происходит сразу после старта приложения.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikesCountReconciliationJob {
+    private final FilmStorage filmStorage;
+    private final PopularityIndex popularityIndex;
+    private final LikeWriteBuffer likeBuffer;
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.reconcile-delay:PT10M}")
+    public void reconcile() {
+        int repaired = filmStorage.reconcileLikesCount();
+        if (repaired > 0) {
+            log.warn("Счётчик лайков исправлен у {} фильмов", repaired);
+            Map<Long, Integer> likesByFilm = filmStorage.getLikesCountByFilm();
+            likesByFilm.replaceAll((filmId, likes) -> Math.max(0, likes + likeBuffer.pendingDelta(filmId)));
+            popularityIndex.rebuild(likesByFilm);
+        } else {
+            log.debug("Счётчики лайков совпадают с film_like");
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 public interface UserService {
     Collection<User> findAllFriend(Long id);
@@ -15,8 +16,14 @@ public interface UserService {
 
     Collection<User> getCommonFriends(Long id, Long otherId);
 
+    Collection<User> getFriendSuggestions(Long id, int limit);
+
     Collection<User> findAll();
 
+    Collection<User> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<User> action);
+
     User create(User user);
 
     User update(User newUser);
@@ -6,41 +6,50 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.FriendSuggestions;
+import ru.yandex.practicum.filmorate.index.LikeMatrix;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validator.PageValidator;
+import ru.yandex.practicum.filmorate.validator.UserValidator;
 
-import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
+
     private final UserStorage storage;
+    private final FriendSuggestions friendSuggestions;
+    private final LikeMatrix likeMatrix;
+    private final UserValidator userValidator;
 
     @Override
     public Collection<User> findAllFriend(Long id) {
-        log.info("Запрос списка друзей пользователя ID: {}", id);
-        findUserOrThrow(id);
+        log.debug("Запрос списка друзей пользователя ID: {}", id);
+        requireUser(id);
         Collection<User> friends = storage.findAllFriend(id);
-        log.info("Возвращено {} друзей для пользователя ID {}", friends.size(), id);
+        log.debug("Возвращено {} друзей для пользователя ID {}", friends.size(), id);
         return friends;
     }
 
     @Override
     public User getUserById(Long userId) {
-        log.info("Запрос пользователя по ID: {}", userId);
+        log.debug("Запрос пользователя по ID: {}", userId);
         User user = findUserOrThrow(userId);
-        log.info("Найден пользователь: {}", user);
+        log.debug("Найден пользователь: {}", user);
         return user;
     }
 
     @Override
     public void addFriend(Long userId, Long friendId) {
-        log.info("Запрос на добавление в друзья: {} -> {}", userId, friendId);
+        log.debug("Запрос на добавление в друзья: {} -> {}", userId, friendId);
 
-        findUserOrThrow(userId);
-        findUserOrThrow(friendId);
+        requireUser(userId);
+        requireUser(friendId);
 
         if (userId.equals(friendId)) {
             String errorMessage = "Пользователь не может добавить самого себя в друзья";
@@ -54,10 +63,10 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public void deleteFriend(Long userId, Long friendId) {
-        log.info("Запрос на удаление из друзей: {} -> {}", userId, friendId);
+        log.debug("Запрос на удаление из друзей: {} -> {}", userId, friendId);
 
-        findUserOrThrow(userId);
-        findUserOrThrow(friendId);
+        requireUser(userId);
+        requireUser(friendId);
 
         if (userId.equals(friendId)) {
             String errorMessage = "Пользователь не может удалить самого себя из друзей";
@@ -71,10 +80,10 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public Collection<User> getCommonFriends(Long id, Long otherId) {
-        log.info("Запрос общих друзей между {} и {}", id, otherId);
+        log.debug("Запрос общих друзей между {} и {}", id, otherId);
 
-        findUserOrThrow(id);
-        findUserOrThrow(otherId);
+        requireUser(id);
+        requireUser(otherId);
 
         if (id.equals(otherId)) {
             String errorMessage = "Пользователь не может сравнить друзей самого себя";
@@ -83,110 +92,100 @@ public class UserServiceImpl implements UserService {
         }
 
         Collection<User> commonFriends = storage.getCommonFriends(id, otherId);
-        log.info("Найдено {} общих друзей между пользователями {} и {}", commonFriends.size(), id, otherId);
+        log.debug("Найдено {} общих друзей между пользователями {} и {}", commonFriends.size(), id, otherId);
         return commonFriends;
     }
 
+    @Override
+    public Collection<User> getFriendSuggestions(Long id, int limit) {
+        log.debug("Запрос рекомендаций друзей для пользователя ID {}, не более {}", id, limit);
+        requireUser(id);
+
+        if (limit <= 0 || limit > friendSuggestions.maxResults()) {
+            String errorMessage = "Количество рекомендаций должно быть от 1 до " + friendSuggestions.maxResults()
+                    + ": " + limit;
+            log.error("Ошибка валидации: {}", errorMessage);
+            throw new ValidationException(errorMessage);
+        }
+
+        long[] ids = friendSuggestions.suggest(id, limit);
+        Collection<User> suggestions = storage.findByIds(Arrays.stream(ids).boxed().toList());
+        log.debug("Найдено {} рекомендаций друзей для пользователя ID {}", suggestions.size(), id);
+        return suggestions;
+    }
+
     @Override
     public Collection<User> findAll() {
-        log.info("Запрос всех пользователей");
+        log.debug("Запрос всех пользователей");
         Collection<User> users = storage.findAll();
-        log.info("Возвращено {} пользователей", users.size());
+        log.debug("Возвращено {} пользователей", users.size());
+        return users;
+    }
+
+    @Override
+    public Collection<User> findPage(Long afterId, int limit) {
+        log.debug("Запрос страницы пользователей после ID {} размером {}", afterId, limit);
+        PageValidator.validLimit(limit);
+        Collection<User> users = storage.findPage(afterId, limit);
+        log.debug("Возвращено {} пользователей", users.size());
         return users;
     }
 
+    @Override
+    public void streamAll(Consumer<User> action) {
+        log.debug("Запрос на потоковую выдачу всех пользователей");
+        long[] count = new long[1];
+        storage.streamAll(user -> {
+            action.accept(user);
+            count[0]++;
+        });
+        log.debug("Выдано {} пользователей", count[0]);
+    }
+
     @Override
     public User create(User user) {
-        log.info("Запрос на создание пользователя: {}", user);
+        log.debug("Запрос на создание пользователя: {}", user);
 
-        validEmail(user);
-        validLogin(user);
-        validName(user);
-        validBirthday(user);
+        userValidator.validateNew(user);
 
         User createdUser = storage.create(user);
-        log.info("Пользователь успешно создан: {}", createdUser);
+        log.info("Создан пользователь ID {}", createdUser.getId());
+        log.debug("Созданный пользователь: {}", createdUser);
         return createdUser;
     }
 
     @Override
     public User update(User newUser) {
-        log.info("Запрос на обновление пользователя: {}", newUser);
+        log.debug("Запрос на обновление пользователя: {}", newUser);
         if (newUser.getId() == null) {
             String errorMessage = "ID пользователя не должен быть пустым";
             log.error("Ошибка валидации: {}", errorMessage);
             throw new ValidationException(errorMessage);
         }
-        User existingUser = findUserOrThrow(newUser.getId());
-        log.debug("Найден пользователь для обновления: {}", existingUser);
-
-        if (newUser.getEmail() != null) {
-            validEmail(newUser);
-        }
-        if (newUser.getLogin() != null && !newUser.getLogin().isBlank()) {
-            validLogin(newUser);
-        }
-        if (newUser.getBirthday() != null) {
-            validBirthday(newUser);
-        }
+        requireUser(newUser.getId());
+        userValidator.validateUpdate(newUser);
 
         User updatedUser = storage.update(newUser);
-        log.info("Пользователь успешно обновлен: {}", updatedUser);
+        log.info("Обновлён пользователь ID {}", updatedUser.getId());
+        log.debug("Обновлённый пользователь: {}", updatedUser);
         return updatedUser;
     }
 
     @Override
     public void delete(Long id) {
-        log.info("Запрос на удаление пользователя ID: {}", id);
-        findUserOrThrow(id);
+        log.debug("Запрос на удаление пользователя ID: {}", id);
+        requireUser(id);
         storage.delete(id);
+        likeMatrix.removeUser(id);
         log.info("Пользователь ID {} успешно удален", id);
     }
 
-    private void validEmail(User user) {
-        if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
-            String errorMessage = "Email должен быть указан и содержать '@': " + user.getEmail();
-            log.error("Ошибка валидации email: {}", errorMessage);
-            throw new ValidationException(errorMessage);
-        }
-
-        boolean emailExists = storage.findAll().stream()
-                .filter(u -> !u.getId().equals(user.getId()))
-                .anyMatch(u -> u.getEmail().equals(user.getEmail()));
-
-        if (emailExists) {
-            String errorMessage = "Email уже используется: " + user.getEmail();
-            log.error("Конфликт email: {}", errorMessage);
-            throw new DuplicatedDataException(errorMessage);
-        }
-    }
-
-    private void validLogin(User user) {
-        if (user.getLogin() == null || user.getLogin().isBlank()) {
-            String errorMessage = "Логин обязателен и не может быть пустым";
-            log.error("Ошибка валидации логина: {}", errorMessage);
-            throw new ValidationException(errorMessage);
-        }
-
-        if (user.getLogin().contains(" ")) {
-            String errorMessage = "Логин не может содержать пробелы: " + user.getLogin();
-            log.error("Ошибка валидации логина: {}", errorMessage);
-            throw new ValidationException(errorMessage);
-        }
-    }
-
-    private void validName(User user) {
-        if (user.getName() == null || user.getName().isBlank()) {
-            log.info("Имя пользователя не указано, установлен логин: {}", user.getLogin());
-            user.setName(user.getLogin());
-        }
-    }
-
-    private void validBirthday(User user) {
-        if (user.getBirthday().isAfter(LocalDate.now())) {
-            String errorMessage = "Дата рождения не может быть в будущем: " + user.getBirthday();
-            log.error("Ошибка валидации даты рождения: {}", errorMessage);
-            throw new ValidationException(errorMessage);
+    // Проверка по индексу id в памяти: строка пользователя для этого не читается
+    private void requireUser(Long userId) {
+        if (!storage.exists(userId)) {
+            String errorMessage = "Пользователь с id = " + userId + " не найден";
+            log.error(errorMessage);
+            throw new NotFoundException(errorMessage);
         }
     }
 
@@ -2,25 +2,53 @@ package ru.yandex.practicum.filmorate.storage;
 
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
+    // Проверка по индексу id в памяти, без запроса к БД
+    boolean exists(Long id);
+
+    Set<Long> findExistingIds(Collection<Long> ids);
+
     Film update(Film newFilm);
 
     void delete(Long id);
 
     Optional<Film> getFilmById(Long id);
 
-    void addLike(Long filmId, Long userId);
+    boolean addLike(Long filmId, Long userId);
+
+    boolean removeLike(Long filmId, Long userId);
+
+    // Пакетно применяет лайки и снятия лайков, возвращает фактическое изменение счётчика по фильмам
+    Map<Long, Integer> applyLikes(Collection<FilmLike> added, Collection<FilmLike> removed);
 
-    void removeLike(Long filmId, Long userId);
+    // Все лайки по возрастанию user_id, затем film_id
+    void streamLikes(Consumer<FilmLike> action);
+
+    int reconcileLikesCount();
+
+    Map<Long, Integer> getLikesCountByFilm();
 
     Collection<Film> getPopularFilms(int count);
 
     Collection<Film> findAll();
+
+    List<Film> findByIds(List<Long> ids);
+
+    Collection<Film> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<Film> action);
 }
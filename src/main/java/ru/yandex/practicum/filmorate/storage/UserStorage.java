@@ -1,13 +1,24 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
+    // Проверка по индексу id в памяти, без запроса к БД
+    boolean exists(Long id);
+
+    Set<Long> findExistingIds(Collection<Long> ids);
+
     User update(User user);
 
     void delete(Long id);
@@ -16,11 +27,21 @@ public interface UserStorage {
 
     void deleteFriend(Long userId, Long friendId);
 
+    void addFriends(Collection<Friendship> friendships);
+
     Collection<User> getCommonFriends(Long id, Long otherId);
 
     Collection<User> findAll();
 
     Optional<User> getUserById(Long id);
 
+    List<User> findByIds(List<Long> ids);
+
+    Optional<Long> findIdByEmail(String email);
+
     Collection<User> findAllFriend(Long id);
+
+    Collection<User> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<User> action);
 }
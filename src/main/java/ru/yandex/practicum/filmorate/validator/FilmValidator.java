@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.validator;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Проверки фильма, общие для API и массового импорта: одни правила и одни сообщения.
+ * Нарушение правила — ValidationException, несуществующий MPA или жанр — NotFoundException.
+ * MPA и жанры заменяются записями из справочника.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmValidator {
+    private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
+    private static final int MAX_DESCRIPTION_LENGTH = 200;
+
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+
+    // Новый фильм: все поля обязательны
+    public void validateNew(Film film) {
+        validName(film);
+        validDescription(film);
+        validDuration(film);
+        validReleaseDate(film);
+        resolveMpaAndGenres(film);
+    }
+
+    // Обновление: проверяются только переданные поля, MPA обязателен
+    public void validateUpdate(Film film) {
+        resolveMpaAndGenres(film);
+        if (film.getDescription() != null) {
+            validDescription(film);
+        }
+        if (film.getReleaseDate() != null) {
+            validReleaseDate(film);
+        }
+        if (film.getDuration() != null) {
+            validDuration(film);
+        }
+    }
+
+    private void validName(Film film) {
+        if (film.getName() == null || film.getName().isBlank()) {
+            fail("Не указано название фильма", film);
+        }
+    }
+
+    private void validDescription(Film film) {
+        if (film.getDescription() == null) {
+            fail("Не указано описание фильма", film);
+        }
+        if (film.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            fail("Превышено максимальное количество символов в описании (макс. " + MAX_DESCRIPTION_LENGTH + ")",
+                    film);
+        }
+    }
+
+    private void validDuration(Film film) {
+        if (film.getDuration() == null || film.getDuration() <= 0) {
+            fail("Продолжительность фильма должна быть положительным числом", film);
+        }
+    }
+
+    private void validReleaseDate(Film film) {
+        if (film.getReleaseDate() == null || !MIN_RELEASE_DATE.isBefore(film.getReleaseDate())) {
+            fail("Дата релиза должна быть после 28 декабря 1895 года", film);
+        }
+    }
+
+    private void resolveMpaAndGenres(Film film) {
+        if (film.getMpaRating() == null) {
+            fail("Не указан рейтинг MPA", film);
+        }
+        MpaRating mpa = mpaStorage.findById(film.getMpaRating().getId())
+                .orElseThrow(() -> new NotFoundException("MPA с id=" + film.getMpaRating().getId() + " не найден"));
+        film.setMpaRating(mpa);
+
+        // Жанры берём из справочника, чтобы в ответе были их названия и не было дублей
+        Set<Genre> genres = new LinkedHashSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(g ->
+                    genres.add(genreStorage.findById(g.getId())
+                            .orElseThrow(() ->
+                                    new NotFoundException("Жанр с id=" + g.getId() + " не найден")
+                            ))
+            );
+        }
+        film.setGenres(genres);
+    }
+
+    private static void fail(String errorMessage, Film film) {
+        log.error("Ошибка валидации: {}: {}", errorMessage, film);
+        throw new ValidationException(errorMessage);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.validator;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/**
+ * Проверки постраничной выдачи (after, limit), общие для фильмов и пользователей.
+ */
+@Slf4j
+public final class PageValidator {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private PageValidator() {
+    }
+
+    public static void validLimit(int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            fail("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ": " + limit);
+        }
+    }
+
+    // Без limit выдаётся весь список, и after молча игнорировался бы
+    public static void requireLimit(Long after) {
+        if (after != null) {
+            fail("Параметр after задаётся только вместе с limit: " + after);
+        }
+    }
+
+    private static void fail(String errorMessage) {
+        log.error("Ошибка валидации: {}", errorMessage);
+        throw new ValidationException(errorMessage);
+    }
+}
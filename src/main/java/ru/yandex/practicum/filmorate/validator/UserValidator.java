@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.validator;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+
+/**
+ * Проверки пользователя, общие для API и массового импорта: одни правила и одни сообщения.
+ * Нарушение правила — ValidationException, занятый email — DuplicatedDataException.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserValidator {
+    private final UserStorage storage;
+
+    // Новый пользователь: email, логин и дата рождения обязательны, пустое имя заменяется логином
+    public void validateNew(User user) {
+        validEmail(user);
+        validLogin(user);
+        validName(user);
+        if (user.getBirthday() == null) {
+            fail("Дата рождения не должна быть пустой");
+        }
+        validBirthday(user);
+    }
+
+    // Обновление: проверяются только переданные поля
+    public void validateUpdate(User user) {
+        if (user.getEmail() != null) {
+            validEmail(user);
+        }
+        if (user.getLogin() != null && !user.getLogin().isBlank()) {
+            validLogin(user);
+        }
+        if (user.getBirthday() != null) {
+            validBirthday(user);
+        }
+    }
+
+    public static String emailInUse(String email) {
+        return "Email уже используется: " + email;
+    }
+
+    private void validEmail(User user) {
+        if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
+            fail("Email должен быть указан и содержать '@': " + user.getEmail());
+        }
+
+        boolean emailExists = storage.findIdByEmail(user.getEmail())
+                .filter(id -> !id.equals(user.getId()))
+                .isPresent();
+
+        if (emailExists) {
+            String errorMessage = emailInUse(user.getEmail());
+            log.error("Конфликт email: {}", errorMessage);
+            throw new DuplicatedDataException(errorMessage);
+        }
+    }
+
+    private void validLogin(User user) {
+        if (user.getLogin() == null || user.getLogin().isBlank()) {
+            fail("Логин обязателен и не может быть пустым");
+        }
+        if (user.getLogin().contains(" ")) {
+            fail("Логин не может содержать пробелы: " + user.getLogin());
+        }
+    }
+
+    private void validName(User user) {
+        if (user.getName() == null || user.getName().isBlank()) {
+            log.debug("Имя пользователя не указано, установлен логин: {}", user.getLogin());
+            user.setName(user.getLogin());
+        }
+    }
+
+    private void validBirthday(User user) {
+        if (user.getBirthday().isAfter(LocalDate.now())) {
+            fail("Дата рождения не может быть в будущем: " + user.getBirthday());
+        }
+    }
+
+    private static void fail(String errorMessage) {
+        log.error("Ошибка валидации: {}", errorMessage);
+        throw new ValidationException(errorMessage);
+    }
+}
@@ -7,6 +7,12 @@ CREATE TABLE IF NOT EXISTS users
     birthday DATE
 );
 
+-- Уникальность email без учёта регистра и пробелов, см. EmailIndex.
+-- На базе с такими дублями индекс не создастся и приложение не запустится: очистка описана в README
+ALTER TABLE users ADD COLUMN IF NOT EXISTS email_normalized VARCHAR(255) GENERATED ALWAYS AS (LOWER(TRIM(email)));
+
+CREATE UNIQUE INDEX IF NOT EXISTS users_email_normalized_uq ON users (email_normalized);
+
 CREATE TABLE IF NOT EXISTS mpa_rating
 (
     mpa_rating_id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -27,9 +33,15 @@ CREATE TABLE IF NOT EXISTS films
     release_date  DATE,
     duration      INTEGER,
     mpa_rating_id BIGINT,
+    likes_count   INTEGER DEFAULT 0 NOT NULL,
     FOREIGN KEY (mpa_rating_id) REFERENCES mpa_rating (mpa_rating_id)
 );
 
+-- Счётчик лайков поддерживается FilmRepository.addLike/removeLike; для уже созданных баз колонка добавляется здесь
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+
 CREATE TABLE IF NOT EXISTS film_like
 (
     user_id BIGINT NOT NULL,
@@ -0,0 +1,335 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор синтетических данных для нагрузочных тестов и оценки ёмкости.
+ * Число лайков выдерживается примерно: у каждого пользователя оно случайное.
+ * <ul>
+ *     <li>лайки: популярность фильма по закону Ципфа (вероятность ~ 1 / rank^s),
+ *     число лайков у пользователя — экспоненциальное со средним likes / users;</li>
+ *     <li>дружба: граф предпочтительного присоединения (Барабаши — Альберт),
+ *     каждый новый пользователь добавляет в друзья friendsPerUser уже существующих
+ *     с вероятностью, пропорциональной их числу связей; как и PUT /users/{id}/friends/{friendId},
+ *     это одна строка user_id → friend_id со статусом PENDING.</li>
+ * </ul>
+ * Результат воспроизводим при одинаковом seed. Запись идёт batch-запросами JDBC пачками
+ * по {@value #BATCH_SIZE} строк с фиксацией после каждой пачки, проверка внешних ключей
+ * H2 на время загрузки отключается. Запуск отдельно:
+ * {@code mvn -P perf test-compile exec:exec@generate-dataset -Ddataset.args="--url=... --likes=10000000"}.
+ */
+public class DatasetGenerator {
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES = 6;
+    private static final int MPA_RATINGS = 5;
+
+    private final DataSource dataSource;
+
+    public DatasetGenerator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public record Spec(int users, int films, long likes, int friendsPerUser, double zipfExponent, long seed) {
+    }
+
+    public record Report(long users, long films, long filmGenres, long likes, long friendships, long elapsedMs) {
+        long rowsPerSecond() {
+            return (users + films + filmGenres + likes + friendships) * 1000 / Math.max(1, elapsedMs);
+        }
+    }
+
+    public Report generate(Spec spec) throws SQLException {
+        long started = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            boolean h2 = connection.getMetaData().getDatabaseProductName().equals("H2");
+            if (h2) {
+                execute(connection, "SET REFERENTIAL_INTEGRITY FALSE");
+            }
+            try {
+                long[] userIds = insertUsers(connection, spec);
+                long[] filmIds = insertFilms(connection, spec);
+                long filmGenres = insertFilmGenres(connection, filmIds, random.split());
+                long likes = insertLikes(connection, spec, userIds, filmIds, random.split());
+                long friendships = insertFriendships(connection, spec, userIds, random.split());
+                long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+                return new Report(userIds.length, filmIds.length, filmGenres, likes, friendships, elapsedMs);
+            } finally {
+                if (h2) {
+                    execute(connection, "SET REFERENTIAL_INTEGRITY TRUE");
+                }
+            }
+        }
+    }
+
+    private long[] insertUsers(Connection connection, Spec spec) throws SQLException {
+        long base = maxId(connection, "SELECT COALESCE(MAX(user_id), 0) FROM users");
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < spec.users(); i++) {
+                ps.setString(1, "gen" + spec.seed() + "-" + (base + i) + "@example.com");
+                ps.setString(2, "gen" + (base + i));
+                ps.setString(3, "User " + (base + i));
+                ps.setDate(4, Date.valueOf(LocalDate.of(1950 + i % 60, 1 + i % 12, 1 + i % 28)));
+                addBatch(connection, ps, i);
+            }
+            flush(connection, ps);
+        }
+        return ids(connection, "SELECT user_id FROM users WHERE user_id > ? ORDER BY user_id", base, spec.users());
+    }
+
+    private long[] insertFilms(Connection connection, Spec spec) throws SQLException {
+        long base = maxId(connection, "SELECT COALESCE(MAX(film_id), 0) FROM films");
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO films (name, description, release_date, duration, mpa_rating_id) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < spec.films(); i++) {
+                ps.setString(1, "Film " + (base + i));
+                ps.setString(2, "Generated film " + (base + i));
+                ps.setDate(3, Date.valueOf(LocalDate.of(1920 + i % 100, 1 + i % 12, 1 + i % 28)));
+                ps.setInt(4, 60 + i % 120);
+                ps.setLong(5, 1 + i % MPA_RATINGS);
+                addBatch(connection, ps, i);
+            }
+            flush(connection, ps);
+        }
+        return ids(connection, "SELECT film_id FROM films WHERE film_id > ? ORDER BY film_id", base, spec.films());
+    }
+
+    // Один-три жанра на фильм
+    private long insertFilmGenres(Connection connection, long[] filmIds, SplittableRandom random) throws SQLException {
+        long count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)")) {
+            for (long filmId : filmIds) {
+                int first = random.nextInt(GENRES);
+                int genres = 1 + random.nextInt(3);
+                for (int g = 0; g < genres; g++) {
+                    ps.setLong(1, filmId);
+                    ps.setLong(2, 1 + (first + g) % GENRES);
+                    addBatch(connection, ps, count++);
+                }
+            }
+            flush(connection, ps);
+        }
+        return count;
+    }
+
+    private long insertLikes(Connection connection, Spec spec, long[] userIds, long[] filmIds,
+                             SplittableRandom random) throws SQLException {
+        if (filmIds.length == 0 || userIds.length == 0) {
+            return 0;
+        }
+        // ранг популярности -> фильм: случайная перестановка, чтобы популярные фильмы не шли подряд
+        long[] byRank = filmIds.clone();
+        for (int i = byRank.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = byRank[i];
+            byRank[i] = byRank[j];
+            byRank[j] = swap;
+        }
+        double[] cumulative = zipfCumulative(filmIds.length, spec.zipfExponent());
+        double meanPerUser = (double) spec.likes() / userIds.length;
+        Map<Long, Integer> likesByFilm = new HashMap<>();
+
+        long count = 0;
+        long[] chosen = new long[Math.min(filmIds.length, Math.max(1, (int) (meanPerUser * 20)))];
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO film_like (user_id, film_id) VALUES (?, ?)")) {
+            for (long userId : userIds) {
+                if (count >= spec.likes()) {
+                    break;
+                }
+                int wanted = (int) Math.min(chosen.length, Math.round(-Math.log(1 - random.nextDouble()) * meanPerUser));
+                wanted = (int) Math.min(wanted, spec.likes() - count);
+                int distinct = sampleDistinct(cumulative, byRank, wanted, chosen, random);
+                // по возрастанию film_id: вставка идёт по порядку первичного ключа (user_id, film_id)
+                Arrays.sort(chosen, 0, distinct);
+                for (int i = 0; i < distinct; i++) {
+                    ps.setLong(1, userId);
+                    ps.setLong(2, chosen[i]);
+                    addBatch(connection, ps, count++);
+                    likesByFilm.merge(chosen[i], 1, Integer::sum);
+                }
+            }
+            flush(connection, ps);
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE films SET likes_count = ? WHERE film_id = ?")) {
+            long updates = 0;
+            for (Map.Entry<Long, Integer> entry : likesByFilm.entrySet()) {
+                ps.setInt(1, entry.getValue());
+                ps.setLong(2, entry.getKey());
+                addBatch(connection, ps, updates++);
+            }
+            flush(connection, ps);
+        }
+        return count;
+    }
+
+    // Выбирает до wanted разных фильмов по распределению Ципфа, возвращает их число
+    private static int sampleDistinct(double[] cumulative, long[] byRank, int wanted, long[] chosen,
+                                      SplittableRandom random) {
+        int distinct = 0;
+        int attempts = wanted * 4;
+        while (distinct < wanted && attempts-- > 0) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            rank = rank >= 0 ? rank : Math.min(-rank - 1, cumulative.length - 1);
+            long filmId = byRank[rank];
+            boolean duplicate = false;
+            for (int i = 0; i < distinct && !duplicate; i++) {
+                duplicate = chosen[i] == filmId;
+            }
+            if (!duplicate) {
+                chosen[distinct++] = filmId;
+            }
+        }
+        return distinct;
+    }
+
+    private static double[] zipfCumulative(int size, double exponent) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private long insertFriendships(Connection connection, Spec spec, long[] userIds,
+                                   SplittableRandom random) throws SQLException {
+        int links = spec.friendsPerUser();
+        if (links <= 0 || userIds.length < 2) {
+            return 0;
+        }
+        // каждый конец каждого ребра: равномерный выбор отсюда пропорционален числу друзей
+        int[] endpoints = new int[Math.toIntExact(2L * links * userIds.length)];
+        int endpointCount = 0;
+        int[] targets = new int[links];
+        for (int user = 1; user < userIds.length; user++) {
+            int wanted = Math.min(links, user);
+            int found = 0;
+            while (found < wanted) {
+                // пока рёбер мало, выбираем равномерно среди уже добавленных пользователей
+                int target = endpointCount == 0 || random.nextInt(4) == 0
+                        ? random.nextInt(user)
+                        : endpoints[random.nextInt(endpointCount)];
+                boolean duplicate = false;
+                for (int i = 0; i < found && !duplicate; i++) {
+                    duplicate = targets[i] == target;
+                }
+                if (!duplicate) {
+                    targets[found++] = target;
+                }
+            }
+            for (int i = 0; i < found; i++) {
+                endpoints[endpointCount++] = user;
+                endpoints[endpointCount++] = targets[i];
+            }
+        }
+
+        // рёбра user → friend, упакованные в long и отсортированные: вставка идёт
+        // по порядку первичного ключа (user_id, friend_id), а не вразброс по всему индексу
+        long[] pairs = new long[endpointCount / 2];
+        for (int i = 0; i < endpointCount; i += 2) {
+            pairs[i / 2] = (long) endpoints[i] << 32 | endpoints[i + 1];
+        }
+        Arrays.sort(pairs);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO friendships (user_id, friend_id, status) VALUES (?, ?, 'PENDING')")) {
+            for (int i = 0; i < pairs.length; i++) {
+                ps.setLong(1, userIds[(int) (pairs[i] >>> 32)]);
+                ps.setLong(2, userIds[(int) pairs[i]]);
+                addBatch(connection, ps, i);
+            }
+            flush(connection, ps);
+        }
+        return pairs.length;
+    }
+
+    private static void addBatch(Connection connection, PreparedStatement ps, long index) throws SQLException {
+        ps.addBatch();
+        if ((index + 1) % BATCH_SIZE == 0) {
+            flush(connection, ps);
+        }
+    }
+
+    private static void flush(Connection connection, PreparedStatement ps) throws SQLException {
+        ps.executeBatch();
+        connection.commit();
+    }
+
+    private static long maxId(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static long[] ids(Connection connection, String sql, long base, int expected) throws SQLException {
+        long[] ids = new long[expected];
+        int count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, base);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next() && count < expected) {
+                    ids[count++] = rs.getLong(1);
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Аргументы: --url, --user, --password, --users, --films, --likes, --friends-per-user, --zipf, --seed.
+     * Схема и справочники создаются скриптами приложения, если их ещё нет.
+     */
+    public static void main(String[] args) throws SQLException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                options.getOrDefault("url", "jdbc:h2:file:./db/perf"),
+                options.getOrDefault("user", "sa"),
+                options.getOrDefault("password", "password"));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        Spec spec = new Spec(
+                Integer.parseInt(options.getOrDefault("users", "100000")),
+                Integer.parseInt(options.getOrDefault("films", "20000")),
+                Long.parseLong(options.getOrDefault("likes", "1000000")),
+                Integer.parseInt(options.getOrDefault("friends-per-user", "10")),
+                Double.parseDouble(options.getOrDefault("zipf", "1.0")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        Report report = new DatasetGenerator(dataSource).generate(spec);
+        System.out.printf("Сгенерировано: %s, %d строк/с%n", report, report.rowsPerSecond());
+    }
+}
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.dal.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+
+/**
+ * Стоимость разбора одной строки films без обращения к БД: строка берётся из ResultSet в памяти.
+ */
+public class FilmRowMapperBenchmark extends PerfBenchmark {
+
+    @State(Scope.Thread)
+    public static class Row {
+        FilmRowMapper mapper;
+        SimpleResultSet rs;
+
+        @Setup
+        public void setUp(PerfDatabase database) throws SQLException {
+            mapper = database.bean(FilmRowMapper.class);
+            rs = new SimpleResultSet();
+            rs.addColumn("film_id", Types.BIGINT, 19, 0);
+            rs.addColumn("name", Types.VARCHAR, 255, 0);
+            rs.addColumn("description", Types.VARCHAR, 255, 0);
+            rs.addColumn("release_date", Types.DATE, 10, 0);
+            rs.addColumn("duration", Types.BIGINT, 19, 0);
+            rs.addColumn("likes_count", Types.INTEGER, 10, 0);
+            rs.addColumn("mpa_rating_id", Types.INTEGER, 10, 0);
+            rs.addRow(1L, "Film 1", "Description 1", Date.valueOf(LocalDate.of(2000, 1, 1)), 120L, 42, 3);
+            rs.next();
+        }
+    }
+
+    @Benchmark
+    public Film mapRow(Row row) throws SQLException {
+        return row.mapper.mapRow(row.rs, 0);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Поиск по индексу в памяти без БД. Слова названий и описаний распределены по Ципфу, поэтому
+ * в запросах есть частые слова (встречаются в большой доле фильмов), их сочетания, префиксы
+ * и редкие слова. maxCandidates = 0 отключает ограничение и показывает полный перебор.
+ */
+public class FilmSearchBenchmark extends PerfBenchmark {
+    private static final String[] COMMON = {"фильм", "история", "жизнь", "любовь", "город", "война", "дорога",
+            "семья", "ночь", "время"};
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        @Param({"200000"})
+        public int films;
+
+        @Param({"10000", "0"})
+        public int maxCandidates;
+
+        @Param({"фильм", "фильм история", "ист", "любовь город ночь", "w4711"})
+        public String query;
+
+        @Param({"20"})
+        public int limit;
+
+        FilmSearchIndex index;
+
+        @Setup
+        public void setUp() {
+            PopularityIndex popularity = new PopularityIndex();
+            index = new FilmSearchIndex(popularity, 3, 64, maxCandidates > 0 ? maxCandidates : Integer.MAX_VALUE);
+            Random random = new Random(42);
+            double[] cumulative = zipfCumulative(COMMON.length + 10_000, 1.0);
+            FilmSearchIndex.Loader loader = index.loader();
+            for (long id = 1; id <= films; id++) {
+                loader.add(id, words(random, cumulative, 3), words(random, cumulative, 12));
+                popularity.register(id, 2000, new int[0]);
+                // лайки тоже с длинным хвостом: у большинства фильмов их почти нет
+                popularity.adjust(id, 1000 / (1 + random.nextInt(1000)));
+            }
+            loader.publish();
+        }
+    }
+
+    @Benchmark
+    public long[] search(Index state) {
+        return state.index.search(state.query, state.limit);
+    }
+
+    private static String words(Random random, double[] cumulative, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            rank = rank >= 0 ? rank : -rank - 1;
+            text.append(rank < COMMON.length ? COMMON[rank] : "w" + (rank - COMMON.length)).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static double[] zipfCumulative(int size, double exponent) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+}
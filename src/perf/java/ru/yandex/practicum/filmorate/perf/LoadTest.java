@@ -0,0 +1,310 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Нагрузочный тест по HTTP: поднимает приложение на случайном порту и подаёт смесь запросов
+ * к контроллерам фильмов и пользователей с постоянной интенсивностью (открытая модель).
+ * Запросы отправляются по расписанию независимо от того, ответил ли сервер на предыдущие,
+ * а задержка считается от запланированного момента отправки — так очередь на стороне
+ * сервера попадает в хвосты распределения, а не прячется за замедлившимся клиентом.
+ * <p>
+ * По каждому маршруту собирается HdrHistogram задержек и число ошибок, итог пишется в JSON,
+ * чтобы сравнивать сборки между собой. Если {@code --url} не задан, база создаётся в памяти
+ * и заполняется {@link DatasetGenerator}; иначе используются уже сгенерированные данные.
+ */
+public class LoadTest {
+    private static final String DEFAULT_MIX = "popular:40,like:15,unlike:10,common-friends:20,film:10,friends:5";
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Map<String, Route> routes;
+
+    LoadTest(String baseUrl, long[] userIds, long[] filmIds, Map<String, Integer> mix) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = baseUrl;
+        this.routes = new LinkedHashMap<>();
+        Map<String, Function<SplittableRandom, HttpRequest.Builder>> known = Map.of(
+                "popular", random -> get("/films/popular?count=10"),
+                "like", random -> put("/films/" + pick(filmIds, random) + "/like/" + pick(userIds, random)),
+                "unlike", random -> delete("/films/" + pick(filmIds, random) + "/like/" + pick(userIds, random)),
+                "common-friends", random -> get("/users/" + pick(userIds, random)
+                        + "/friends/common/" + pick(userIds, random)),
+                "film", random -> get("/films/" + pick(filmIds, random)),
+                "friends", random -> get("/users/" + pick(userIds, random) + "/friends"));
+        mix.forEach((name, weight) -> {
+            if (!known.containsKey(name)) {
+                throw new IllegalArgumentException("Неизвестный маршрут: " + name + ", доступны " + known.keySet());
+            }
+            routes.put(name, new Route(name, weight, known.get(name)));
+        });
+    }
+
+    /**
+     * Подаёт rate запросов в секунду в течение warmup + duration секунд, учитывая только
+     * запросы, запланированные после прогрева. Одновременно в полёте не больше maxInFlight
+     * запросов: остальные считаются отброшенными, чтобы клиент не исчерпал память.
+     */
+    Report run(int rate, int warmupSeconds, int durationSeconds, int maxInFlight, long seed) {
+        Route[] wheel = wheel();
+        SplittableRandom random = new SplittableRandom(seed);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * (warmupSeconds + durationSeconds);
+        long measuredFrom = (long) rate * warmupSeconds;
+
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long intended = started + i * interval;
+                long delay = intended - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                Route route = wheel[random.nextInt(wheel.length)];
+                boolean measured = i >= measuredFrom;
+                if (!inFlight.tryAcquire()) {
+                    if (measured) {
+                        route.dropped.increment();
+                    }
+                    continue;
+                }
+                HttpRequest request = route.request.apply(random.split())
+                        .timeout(Duration.ofSeconds(30))
+                        .build();
+                executor.execute(() -> {
+                    try {
+                        send(route, request, intended, measured);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        double seconds = durationSeconds;
+        Map<String, RouteReport> byRoute = new LinkedHashMap<>();
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        long rejected = 0;
+        long dropped = 0;
+        for (Route route : routes.values()) {
+            byRoute.put(route.name, RouteReport.of(route.latencies, route.errors.sum(), route.rejected.sum(),
+                    route.dropped.sum(), seconds));
+            all.add(route.latencies);
+            errors += route.errors.sum();
+            rejected += route.rejected.sum();
+            dropped += route.dropped.sum();
+        }
+        return new Report(rate, durationSeconds, RouteReport.of(all, errors, rejected, dropped, seconds), byRoute);
+    }
+
+    private void send(Route route, HttpRequest request, long intended, boolean measured) {
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (measured) {
+            route.latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+            // 503 — отказ ограничителя конкурентности, считается и среди ошибок
+            if (status < 0 || status >= 400) {
+                route.errors.increment();
+            }
+            if (status == 503) {
+                route.rejected.increment();
+            }
+        }
+    }
+
+    // Маршруты, повторённые по своему весу: случайный индекс даёт маршрут с нужной вероятностью
+    private Route[] wheel() {
+        List<Route> wheel = new ArrayList<>();
+        for (Route route : routes.values()) {
+            for (int i = 0; i < route.weight; i++) {
+                wheel.add(route);
+            }
+        }
+        if (wheel.isEmpty()) {
+            throw new IllegalArgumentException("Сумма весов маршрутов должна быть положительной");
+        }
+        return wheel.toArray(new Route[0]);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+    }
+
+    private HttpRequest.Builder put(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).PUT(HttpRequest.BodyPublishers.noBody());
+    }
+
+    private HttpRequest.Builder delete(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).DELETE();
+    }
+
+    private static long pick(long[] ids, SplittableRandom random) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private static final class Route {
+        private final String name;
+        private final int weight;
+        private final Function<SplittableRandom, HttpRequest.Builder> request;
+        // задержки в микросекундах
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private Route(String name, int weight, Function<SplittableRandom, HttpRequest.Builder> request) {
+            this.name = name;
+            this.weight = weight;
+            this.request = request;
+        }
+    }
+
+    public record Report(int rate, int durationSeconds, RouteReport total, Map<String, RouteReport> routes) {
+    }
+
+    public record RouteReport(long count, long errors, long rejected, long dropped, double throughput,
+                              double p50Ms, double p90Ms, double p99Ms, double p999Ms, double maxMs) {
+        static RouteReport of(Histogram latencies, long errors, long rejected, long dropped, double seconds) {
+            return new RouteReport(latencies.getTotalCount(), errors, rejected, dropped,
+                    latencies.getTotalCount() / seconds,
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()));
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+
+    /**
+     * Аргументы: --url, --user, --password (готовая база) или --users, --films, --likes (база в памяти),
+     * --rate (запросов в секунду), --warmup и --duration (секунды), --mix (маршрут:вес через запятую),
+     * --max-in-flight, --seed, --report (путь к JSON-отчёту). Параметры вида --app.имя=значение
+     * передаются приложению как --имя=значение, например --app.spring.threads.virtual.enabled=true.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        String url = options.get("url");
+        if (url == null) {
+            url = "jdbc:h2:mem:load-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+            try (ConfigurableApplicationContext seeding = start(url, options, false)) {
+                DatasetGenerator.Report generated = new DatasetGenerator(seeding.getBean(DataSource.class))
+                        .generate(new DatasetGenerator.Spec(
+                                Integer.parseInt(options.getOrDefault("users", "10000")),
+                                Integer.parseInt(options.getOrDefault("films", "2000")),
+                                Long.parseLong(options.getOrDefault("likes", "200000")),
+                                Integer.parseInt(options.getOrDefault("friends-per-user", "10")),
+                                Double.parseDouble(options.getOrDefault("zipf", "1.0")),
+                                seed));
+                System.out.printf("Сгенерировано: %s%n", generated);
+            }
+        }
+
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+            String[] pair = part.split(":", 2);
+            mix.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+
+        try (ConfigurableApplicationContext context = start(url, options, true)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            long[] userIds = jdbc.queryForList("SELECT user_id FROM users", Long.class).stream()
+                    .mapToLong(Long::longValue).toArray();
+            long[] filmIds = jdbc.queryForList("SELECT film_id FROM films", Long.class).stream()
+                    .mapToLong(Long::longValue).toArray();
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            Report report = new LoadTest("http://localhost:" + port, userIds, filmIds, mix).run(
+                    Integer.parseInt(options.getOrDefault("rate", "500")),
+                    Integer.parseInt(options.getOrDefault("warmup", "10")),
+                    Integer.parseInt(options.getOrDefault("duration", "30")),
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "2000")),
+                    seed);
+
+            File file = new File(options.getOrDefault("report", "target/load-report.json"));
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+            System.out.printf("%-16s %8s %7s %7s %7s %9s %9s %9s %9s %9s%n",
+                    "route", "count", "errors", "503", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            report.routes().forEach((name, route) -> print(name, route));
+            print("total", report.total());
+            System.out.println("Отчёт: " + file.getAbsolutePath());
+        }
+    }
+
+    private static void print(String name, RouteReport route) {
+        System.out.printf("%-16s %8d %7d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, route.count(),
+                route.errors(), route.rejected(), route.dropped(), route.throughput(), route.p50Ms(), route.p99Ms(), route.p999Ms(), route.maxMs());
+    }
+
+    private static ConfigurableApplicationContext start(String url, Map<String, String> options, boolean web) {
+        List<String> args = new ArrayList<>(List.of("--spring.datasource.url=" + url,
+                "--spring.datasource.username=" + options.getOrDefault("user", "sa"),
+                "--spring.datasource.password=" + options.getOrDefault("password", "password"),
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.ru.yandex.practicum.filmorate=WARN",
+                // иначе замеряется в основном вывод тел запросов и ответов в консоль
+                "--logging.level.org.zalando.logbook=WARN",
+                "--spring.main.banner-mode=off"));
+        options.forEach((name, value) -> {
+            if (name.startsWith("app.")) {
+                args.add("--" + name.substring("app.".length()) + "=" + value);
+            }
+        });
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(web ? WebApplicationType.SERVLET : WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Контекст приложения без веб-сервера поверх встроенной H2 в памяти, заполненной
+ * {@link DatasetGenerator} данными заданного размера. Сначала поднимается контекст
+ * для создания схемы и заполнения, затем он закрывается и поднимается заново на той же
+ * базе — так индексы в памяти строятся при старте, как в работающем приложении.
+ */
+@State(Scope.Benchmark)
+public class PerfDatabase {
+    @Param({"10000"})
+    public int users;
+
+    @Param({"2000"})
+    public int films;
+
+    @Param({"20"})
+    public int likesPerUser;
+
+    @Param({"10"})
+    public int friendsPerUser;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:perf-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (ConfigurableApplicationContext seeding = start(url)) {
+            new DatasetGenerator(seeding.getBean(DataSource.class))
+                    .generate(new DatasetGenerator.Spec(users, films, (long) users * likesPerUser,
+                            friendsPerUser, zipfExponent, 42));
+        }
+        context = start(url);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.getBean(JdbcTemplate.class).execute("SHUTDOWN");
+        context.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(users) + 1;
+    }
+
+    public long randomFilmId() {
+        return ThreadLocalRandom.current().nextLong(films) + 1;
+    }
+
+    private static ConfigurableApplicationContext start(String url) {
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url,
+                        "--logging.level.root=WARN",
+                        "--logging.level.ru.yandex.practicum.filmorate=WARN",
+                        "--spring.main.banner-mode=off");
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Горячие пути хранилищ на заполненной базе: жанры пачки фильмов, популярные фильмы, общие друзья.
+ */
+public class StorageBenchmark extends PerfBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Storages {
+        @Param({"100"})
+        public int genreBatch;
+
+        @Param({"10"})
+        public int popularCount;
+
+        FilmStorage filmStorage;
+        GenreStorage genreStorage;
+        UserStorage userStorage;
+
+        @Setup
+        public void setUp(PerfDatabase database) {
+            filmStorage = database.bean(FilmStorage.class);
+            genreStorage = database.bean(GenreStorage.class);
+            userStorage = database.bean(UserStorage.class);
+        }
+    }
+
+    @Benchmark
+    public Map<Long, Set<Genre>> getGenresForFilms(PerfDatabase database, Storages storages) {
+        List<Long> ids = new ArrayList<>(storages.genreBatch);
+        for (int i = 0; i < storages.genreBatch; i++) {
+            ids.add(database.randomFilmId());
+        }
+        return storages.genreStorage.getGenresForFilms(ids);
+    }
+
+    @Benchmark
+    public Collection<Film> getPopularFilms(Storages storages) {
+        return storages.filmStorage.getPopularFilms(storages.popularCount);
+    }
+
+    @Benchmark
+    public Collection<User> getCommonFriends(PerfDatabase database, Storages storages) {
+        return storages.userStorage.getCommonFriends(database.randomUserId(), database.randomUserId());
+    }
+}
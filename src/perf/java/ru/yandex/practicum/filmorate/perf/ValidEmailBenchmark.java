@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserServiceImpl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+
+/**
+ * Проверка email при создании и обновлении пользователя. Метод закрытый,
+ * поэтому вызывается через MethodHandle, без изменения видимости в коде сервиса.
+ */
+public class ValidEmailBenchmark extends PerfBenchmark {
+
+    @State(Scope.Thread)
+    public static class Validation {
+        UserServiceImpl service;
+        MethodHandle validEmail;
+        User newUser;
+        User existingUser;
+
+        @Setup
+        public void setUp(PerfDatabase database) throws ReflectiveOperationException {
+            service = database.bean(UserServiceImpl.class);
+            validEmail = MethodHandles.privateLookupIn(UserServiceImpl.class, MethodHandles.lookup())
+                    .findVirtual(UserServiceImpl.class, "validEmail", MethodType.methodType(void.class, User.class));
+            newUser = new User(null, "New.User@Perf.Local", "new", "New", LocalDate.of(1990, 1, 1));
+            existingUser = new User(1L, "USER1@perf.local", "user1", "User 1", LocalDate.of(1990, 1, 1));
+        }
+    }
+
+    @Benchmark
+    public void validEmailNew(Validation validation) throws Throwable {
+        validation.validEmail.invokeExact(validation.service, validation.newUser);
+    }
+
+    @Benchmark
+    public void validEmailOwn(Validation validation) throws Throwable {
+        validation.validEmail.invokeExact(validation.service, validation.existingUser);
+    }
+}
@@ -1,34 +1,104 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zalando.logbook.HttpRequest;
+import ru.yandex.practicum.filmorate.cache.EntityVersions;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.concurrency.ConcurrencyLimitFilter;
+import ru.yandex.practicum.filmorate.controller.ConditionalGet;
+import ru.yandex.practicum.filmorate.controller.ErrorHandler;
+import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.controller.GenreController;
+import ru.yandex.practicum.filmorate.controller.JsonArrayStreamer;
 import ru.yandex.practicum.filmorate.dal.FilmRepository;
 import ru.yandex.practicum.filmorate.dal.GenreRepository;
 import ru.yandex.practicum.filmorate.dal.MpaRepository;
+import ru.yandex.practicum.filmorate.dal.ReferenceDictionary;
 import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.dal.mappers.FilmResultSetExtractor;
+import ru.yandex.practicum.filmorate.dal.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dal.profiling.ProfilingDataSourcePostProcessor;
+import ru.yandex.practicum.filmorate.dal.profiling.SqlProfile;
+import ru.yandex.practicum.filmorate.dal.profiling.SqlProfiler;
+import ru.yandex.practicum.filmorate.dal.routing.ReplicaRead;
+import ru.yandex.practicum.filmorate.dal.routing.ReplicaReadAspect;
+import ru.yandex.practicum.filmorate.dal.routing.RoutingContext;
+import ru.yandex.practicum.filmorate.dal.routing.RoutingDataSource;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.index.EmailIndex;
+import ru.yandex.practicum.filmorate.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.index.FriendSuggestions;
+import ru.yandex.practicum.filmorate.index.IdBitmap;
+import ru.yandex.practicum.filmorate.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.index.LikeSet;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.logging.HttpLogSampling;
+import ru.yandex.practicum.filmorate.metrics.StorageMetricsAspect;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreServiceImpl;
+import ru.yandex.practicum.filmorate.service.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.service.LikesCountReconciliationJob;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validator.PageValidator;
 
+import javax.sql.DataSource;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@JdbcTest
+@JdbcTest(properties = "filmorate.sql.profiling.enabled=true")
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({
@@ -36,8 +106,19 @@ import static org.assertj.core.api.Assertions.assertThat;
         UserRepository.class,
         GenreRepository.class,
         MpaRepository.class,
+        EntityVersions.class,
+        FilmCache.class,
+        PopularityIndex.class,
+        FilmSearchIndex.class,
+        EmailIndex.class,
+        FriendGraph.class,
+        FriendSuggestions.class,
+        LikeMatrix.class,
+        SqlProfiler.class,
+        ProfilingDataSourcePostProcessor.class,
         ru.yandex.practicum.filmorate.dal.mappers.UserRowMapper.class,
         ru.yandex.practicum.filmorate.dal.mappers.FilmRowMapper.class,
+        ru.yandex.practicum.filmorate.dal.mappers.FilmResultSetExtractor.class,
         ru.yandex.practicum.filmorate.dal.mappers.GenreRowMapper.class,
         ru.yandex.practicum.filmorate.dal.mappers.MpaRowMapper.class
 })
@@ -47,6 +128,17 @@ class FilmRateApplicationTests {
     private final FilmStorage filmStorage;
     private final GenreStorage genreStorage;
     private final MpaStorage mpaStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularityIndex;
+    private final FriendGraph friendGraph;
+    private final FriendSuggestions friendSuggestions;
+    private final LikeMatrix likeMatrix;
+    private final SqlProfiler sqlProfiler;
+    private final EntityVersions entityVersions;
+    private final PlatformTransactionManager transactionManager;
+    private final FilmSearchIndex searchIndex;
+    private final FilmRowMapper filmRowMapper;
+    private final FilmResultSetExtractor filmResultSetExtractor;
 
     private Long userId1, userId2;
     private Long filmId1, filmId2;
@@ -110,6 +202,20 @@ class FilmRateApplicationTests {
         assertThat(all).hasSizeGreaterThanOrEqualTo(2);
     }
 
+    @Test
+    void testUsersKeysetPageAndStream() {
+        assertThat(userStorage.findPage(userId1 - 1, 1))
+                .extracting(User::getId)
+                .containsExactly(userId1);
+        assertThat(userStorage.findPage(userId1, 10))
+                .extracting(User::getId)
+                .containsExactly(userId2);
+
+        List<Long> streamed = new ArrayList<>();
+        userStorage.streamAll(user -> streamed.add(user.getId()));
+        assertThat(streamed).isSorted().contains(userId1, userId2);
+    }
+
     @Test
     void testUpdateUser() {
         User u = userStorage.getUserById(userId1).orElseThrow();
@@ -122,6 +228,29 @@ class FilmRateApplicationTests {
                 .hasFieldOrPropertyWithValue("email", "new@a.com");
     }
 
+    @Test
+    void testEmailUniqueness() {
+        assertThat(userStorage.findIdByEmail(" A@A.com")).contains(userId1);
+        assertThat(userStorage.findIdByEmail("nobody@a.com")).isEmpty();
+
+        User duplicate = User.builder()
+                .email("A@a.COM").login("dup").name("Dup").birthday(LocalDate.of(2000, 1, 1))
+                .build();
+        assertThatThrownBy(() -> userStorage.create(duplicate))
+                .isInstanceOf(DuplicatedDataException.class);
+
+        User u = userStorage.getUserById(userId1).orElseThrow();
+        u.setEmail("renamed@a.com");
+        userStorage.update(u);
+        assertThat(userStorage.findIdByEmail("a@a.com")).isEmpty();
+        assertThat(userStorage.findIdByEmail("RENAMED@a.com")).contains(userId1);
+
+        User other = userStorage.getUserById(userId2).orElseThrow();
+        other.setEmail("renamed@a.com");
+        assertThatThrownBy(() -> userStorage.update(other))
+                .isInstanceOf(DuplicatedDataException.class);
+    }
+
     @Test
     void testFriendsLifecycle() {
         assertThat(userStorage.findAllFriend(userId1)).isEmpty();
@@ -136,6 +265,179 @@ class FilmRateApplicationTests {
         assertThat(userStorage.findAllFriend(userId1)).isEmpty();
     }
 
+    @Test
+    void testFriendGraphChangesApplyAfterCommit() {
+        // связь из незафиксированной транзакции теста видна только ей
+        userStorage.addFriend(userId1, userId2);
+        assertThat(friendGraph.friendsOf(userId1)).containsExactly(userId2);
+        assertThat(friendGraph.followersOf(userId2)).containsExactly(userId1);
+        CompletableFuture.runAsync(() -> assertThat(friendGraph.friendsOf(userId1)).isEmpty()).join();
+
+        CompletableFuture.runAsync(() -> {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.executeWithoutResult(status -> {
+                friendGraph.add(-1L, -2L);
+                status.setRollbackOnly();
+            });
+            assertThat(friendGraph.friendsOf(-1L)).isEmpty();
+
+            transaction.executeWithoutResult(status -> friendGraph.add(-1L, -2L));
+            assertThat(friendGraph.friendsOf(-1L)).containsExactly(-2L);
+            assertThat(friendGraph.followersOf(-2L)).containsExactly(-1L);
+            friendGraph.remove(-1L, -2L);
+        }).join();
+    }
+
+    @Test
+    void testBatchCreateAndExistenceLookup() {
+        List<User> users = userStorage.createAll(List.of(
+                User.builder().email("c@c.com").login("c").name("C").birthday(LocalDate.of(1970, 3, 3)).build(),
+                User.builder().email("d@d.com").login("d").name("D").birthday(LocalDate.of(1975, 4, 4)).build()));
+        Long userId3 = users.get(0).getId();
+        Long userId4 = users.get(1).getId();
+        assertThat(userId4).isGreaterThan(userId3);
+        assertThat(userStorage.findIdByEmail("D@d.com")).contains(userId4);
+
+        List<Film> films = filmStorage.createAll(List.of(Film.builder()
+                .name("Batch")
+                .description("Batch desc")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(90L)
+                .mpaRating(new MpaRating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(3, "Мультфильм"))))
+                .build()));
+        assertThat(filmStorage.getFilmById(films.getFirst().getId())).get()
+                .extracting(Film::getGenres)
+                .satisfies(genres -> assertThat(genres).extracting(Genre::getId).containsExactly(1, 3));
+
+        assertThat(userStorage.findExistingIds(List.of(userId1, userId4, 999_999L)))
+                .containsExactlyInAnyOrder(userId1, userId4);
+        assertThat(filmStorage.findExistingIds(List.of(filmId2, 999_999L))).containsExactly(filmId2);
+
+        // повторная связь в пакете не дублируется и не падает
+        userStorage.addFriends(List.of(new Friendship(userId3, userId4), new Friendship(userId3, userId4)));
+        assertThat(userStorage.findAllFriend(userId3)).extracting(User::getId).containsExactly(userId4);
+    }
+
+    @Test
+    void testCommonFriendsFromGraph() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            users.add(User.builder()
+                    .email("hub" + i + "@mail.com").login("hub" + i).birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        List<Long> ids = userStorage.createAll(users).stream().map(User::getId).toList();
+        Long hub = ids.getFirst();
+        // у хаба 69 друзей, у userId1 — два из них: пересечение идёт galloping-поиском
+        ids.subList(1, ids.size()).forEach(id -> userStorage.addFriend(hub, id));
+        userStorage.addFriend(userId1, ids.get(68));
+        userStorage.addFriend(userId1, ids.get(5));
+        userStorage.addFriend(userId2, ids.get(5));
+
+        assertThat(userStorage.getCommonFriends(hub, userId1))
+                .extracting(User::getId)
+                .containsExactly(ids.get(5), ids.get(68));
+        assertThat(userStorage.getCommonFriends(userId1, userId2))
+                .extracting(User::getId)
+                .containsExactly(ids.get(5));
+        assertThat(userStorage.findAllFriend(hub)).hasSize(69);
+
+        userStorage.deleteFriend(userId1, ids.get(5));
+        assertThat(userStorage.getCommonFriends(userId2, userId1)).isEmpty();
+    }
+
+    @Test
+    void testQueryBudgetsForPopularFilmsAndCommonFriends() {
+        userStorage.addFriend(userId1, userId2);
+        filmStorage.addLike(filmId1, userId1);
+        filmStorage.addLike(filmId2, userId2);
+
+        // фильмы и их жанры — два обращения к БД, MPA берётся из справочника без запросов
+        SqlProfile popular = sqlProfiler.profile(() -> filmStorage.findByIds(List.of(filmId1, filmId2)));
+        assertThat(popular.roundTrips()).isLessThanOrEqualTo(2);
+        assertThat(popular.rows()).isGreaterThanOrEqualTo(2);
+        assertThat(popular.repeatedMoreThan(1)).isEmpty();
+
+        // id общих друзей берутся из графа в памяти, из БД — только сами пользователи
+        SqlProfile common = sqlProfiler.profile(() -> userStorage.getCommonFriends(userId1, userId2));
+        assertThat(common.roundTrips()).isLessThanOrEqualTo(1);
+
+        SqlProfile repeated = sqlProfiler.profile(() -> {
+            for (int i = 0; i < 3; i++) {
+                userStorage.getUserById(userId1);
+            }
+        });
+        assertThat(repeated.repeatedMoreThan(2)).hasSize(1).containsValue(3);
+    }
+
+    @Test
+    void testFriendSuggestionsRankedByMutualFriends() {
+        List<Long> ids = userStorage.createAll(List.of(
+                User.builder().email("s1@mail.com").login("s1").birthday(LocalDate.of(1990, 1, 1)).build(),
+                User.builder().email("s2@mail.com").login("s2").birthday(LocalDate.of(1990, 1, 1)).build(),
+                User.builder().email("s3@mail.com").login("s3").birthday(LocalDate.of(1990, 1, 1)).build()))
+                .stream().map(User::getId).toList();
+        userStorage.addFriend(userId1, userId2);
+        userStorage.addFriend(userId1, ids.get(0));
+        userStorage.addFriend(userId2, ids.get(1));
+        userStorage.addFriend(userId2, ids.get(2));
+        userStorage.addFriend(ids.get(0), ids.get(2));
+        userStorage.addFriend(ids.get(0), userId2);
+
+        // s3 — общий у двух друзей, s2 — у одного, userId2 уже в друзьях
+        assertThat(friendSuggestions.suggest(userId1, 10)).containsExactly(ids.get(2), ids.get(1));
+        assertThat(friendSuggestions.suggest(userId1, 1)).containsExactly(ids.get(2));
+
+        // добавление в друзья сбрасывает кэш рекомендаций
+        userStorage.addFriend(userId1, ids.get(2));
+        assertThat(friendSuggestions.suggest(userId1, 10)).containsExactly(ids.get(1));
+        userStorage.deleteFriend(userId2, ids.get(1));
+        assertThat(friendSuggestions.suggest(userId1, 10)).isEmpty();
+    }
+
+    @Test
+    void testFriendSuggestionsInvalidatedDuringComputeAreNotCached() {
+        AtomicReference<FriendSuggestions> suggestions = new AtomicReference<>();
+        AtomicBoolean racing = new AtomicBoolean(true);
+        FriendGraph graph = new FriendGraph() {
+            @Override
+            public long[] friendsOf(long userId) {
+                // пока рейтинг считается, параллельная транзакция меняет друзей и сбрасывает кэш
+                if (racing.compareAndSet(true, false)) {
+                    suggestions.get().invalidate(1L);
+                }
+                return super.friendsOf(userId);
+            }
+        };
+        suggestions.set(new FriendSuggestions(graph, 1000, 100_000, 100, 10));
+
+        CompletableFuture.runAsync(() -> {
+            graph.add(1L, 2L);
+            graph.add(2L, 3L);
+            assertThat(suggestions.get().suggest(1L, 10)).containsExactly(3L);
+            assertThat(suggestions.get().cachedCount()).isZero();
+
+            assertThat(suggestions.get().suggest(1L, 10)).containsExactly(3L);
+            assertThat(suggestions.get().cachedCount()).isEqualTo(1);
+        }).join();
+    }
+
+    @Test
+    void testFriendSuggestionsSampleHubFriendsAcrossIdRange() {
+        FriendGraph graph = new FriendGraph();
+        FriendSuggestions suggestions = new FriendSuggestions(graph, 2, 100_000, 100, 10);
+
+        CompletableFuture.runAsync(() -> {
+            graph.add(1L, 2L);
+            for (long friendId = 100; friendId < 110; friendId++) {
+                graph.add(2L, friendId);
+            }
+            // из десяти связей хаба берутся две с шагом в половину списка, а не две первые
+            assertThat(suggestions.suggest(1L, 10)).containsExactlyInAnyOrder(100L, 105L);
+        }).join();
+    }
+
     @Test
     void testAddFilm() {
         Film f = Film.builder()
@@ -169,6 +471,24 @@ class FilmRateApplicationTests {
         assertThat(films).hasSizeGreaterThanOrEqualTo(2);
     }
 
+    @Test
+    void testFilmsKeysetPageAndStream() {
+        assertThat(filmStorage.findPage(null, 100))
+                .extracting(Film::getId)
+                .isSorted()
+                .contains(filmId1, filmId2);
+        assertThat(filmStorage.findPage(filmId1, 1))
+                .singleElement()
+                .satisfies(film -> {
+                    assertThat(film.getId()).isEqualTo(filmId2);
+                    assertThat(film.getGenres()).containsExactly(new Genre(2, "Драма"));
+                });
+
+        List<Film> streamed = new ArrayList<>();
+        filmStorage.streamAll(streamed::add);
+        assertThat(streamed).extracting(Film::getId).isSorted().contains(filmId1, filmId2);
+    }
+
     @Test
     void testUpdateFilm() {
         Film f = filmStorage.getFilmById(filmId2).orElseThrow();
@@ -179,6 +499,30 @@ class FilmRateApplicationTests {
                 .get().hasFieldOrPropertyWithValue("name", "UpdatedName");
     }
 
+    @Test
+    void testUpdateFilmAppliesGenreDiff() {
+        Film f = filmStorage.getFilmById(filmId1).orElseThrow();
+        f.setGenres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(3, "Мультфильм"),
+                new Genre(5, "Документальный"))));
+        filmStorage.update(f);
+        assertThat(filmStorage.getFilmById(filmId1).orElseThrow().getGenres())
+                .extracting(Genre::getId)
+                .containsExactly(1, 3, 5);
+
+        f.setGenres(new LinkedHashSet<>(List.of(new Genre(5, "Документальный"), new Genre(6, "Боевик"))));
+        filmStorage.update(f);
+        assertThat(filmStorage.getFilmById(filmId1).orElseThrow().getGenres())
+                .extracting(Genre::getId)
+                .containsExactly(5, 6);
+
+        f.setGenres(null);
+        filmStorage.update(f);
+        assertThat(filmStorage.getFilmById(filmId1).orElseThrow().getGenres()).isEmpty();
+
+        f.setId(-1L);
+        assertThatThrownBy(() -> filmStorage.update(f)).isInstanceOf(NotFoundException.class);
+    }
+
     @Test
     void testTopFilmsAndLikes() {
         filmStorage.addLike(filmId1, userId1);
@@ -190,6 +534,249 @@ class FilmRateApplicationTests {
                 .containsExactly(filmId1);
     }
 
+    @Test
+    void testFilmsHydratedInSingleQuery() {
+        Film f = Film.builder()
+                .name("Stalker")
+                .description("Zone")
+                .releaseDate(LocalDate.of(1979, 5, 25))
+                .duration(163L)
+                .mpaRating(new MpaRating(3, "PG-13"))
+                .genres(new LinkedHashSet<>(Set.of(new Genre(4, "Триллер"), new Genre(2, "Драма"))))
+                .build();
+        Long id = filmStorage.create(f).getId();
+        filmStorage.addLike(id, userId1);
+        filmStorage.addLike(id, userId2);
+
+        Film loaded = filmStorage.getFilmById(id).orElseThrow();
+        assertThat(loaded.getMpaRating()).isEqualTo(new MpaRating(3, "PG-13"));
+        assertThat(loaded.getGenres())
+                .containsExactly(new Genre(2, "Драма"), new Genre(4, "Триллер"));
+        assertThat(loaded.getLikesCount()).isEqualTo(2);
+
+        assertThat(filmStorage.getPopularFilms(1))
+                .singleElement()
+                .satisfies(film -> {
+                    assertThat(film.getId()).isEqualTo(id);
+                    assertThat(film.getGenres()).hasSize(2);
+                });
+        assertThat(filmStorage.findAll())
+                .filteredOn(film -> film.getId().equals(filmId1))
+                .singleElement()
+                .satisfies(film -> assertThat(film.getGenres()).containsExactly(new Genre(1, "Комедия")));
+        assertThat(filmStorage.getFilmById(-1L)).isEmpty();
+    }
+
+    @Test
+    void testLikesCountMaintainedAndReconciled() {
+        assertThat(filmStorage.addLike(filmId2, userId1)).isTrue();
+        assertThat(filmStorage.addLike(filmId2, userId1)).isFalse();
+        assertThat(filmStorage.addLike(filmId2, userId2)).isTrue();
+        assertThat(filmStorage.getFilmById(filmId2)).get()
+                .hasFieldOrPropertyWithValue("likesCount", 2);
+
+        assertThat(filmStorage.removeLike(filmId2, userId2)).isTrue();
+        assertThat(filmStorage.removeLike(filmId2, userId2)).isFalse();
+        assertThat(filmStorage.getFilmById(filmId2)).get()
+                .hasFieldOrPropertyWithValue("likesCount", 1);
+
+        jdbcTemplate.update("UPDATE films SET likes_count = 42 WHERE film_id = ?", filmId2);
+        // у фильма без лайков в film_like нет строк, счётчик всё равно должен обнулиться
+        jdbcTemplate.update("UPDATE films SET likes_count = 5 WHERE film_id = ?", filmId1);
+        assertThat(filmStorage.reconcileLikesCount()).isEqualTo(2);
+        assertThat(filmStorage.getFilmById(filmId1)).get()
+                .hasFieldOrPropertyWithValue("likesCount", 0);
+        assertThat(filmStorage.getFilmById(filmId2)).get()
+                .hasFieldOrPropertyWithValue("likesCount", 1);
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+    }
+
+    @Test
+    void testReconciliationRebuildsPopularityIndex() {
+        popularityIndex.rebuild(filmStorage.getLikesCountByFilm());
+        popularityIndex.register(filmId2, 2010, new int[]{2});
+        assertThat(filmStorage.addLike(filmId2, userId1)).isTrue();
+        // рейтинг разошёлся с film_like: лайк записан в обход индекса, а индекс считает лишнее
+        popularityIndex.adjust(filmId1, 7);
+        jdbcTemplate.update("UPDATE films SET likes_count = 42 WHERE film_id = ?", filmId2);
+
+        LikeWriteBuffer buffer = new LikeWriteBuffer(filmStorage, popularityIndex, true, 100, 100, false);
+        try {
+            buffer.add(filmId1, userId2);
+            new LikesCountReconciliationJob(filmStorage, popularityIndex, buffer).reconcile();
+
+            assertThat(popularityIndex.likesOf(filmId2)).isEqualTo(1);
+            // лишнее ушло, а отложенный лайк ещё не записан, но остаётся в рейтинге
+            assertThat(popularityIndex.likesOf(filmId1)).isEqualTo(1);
+            // год и жанры фильма пережили перестройку
+            assertThat(popularityIndex.top(10, 2, 2010)).containsExactly(filmId2);
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    void testPopularityIndexMatchesSql() {
+        Long userId3 = userStorage.create(User.builder()
+                .email("c@c.com").login("c").name("C").birthday(LocalDate.of(1995, 3, 3))
+                .build()).getId();
+        Long filmId3 = filmStorage.create(Film.builder()
+                .name("Film3").description("Desc3").releaseDate(LocalDate.of(2020, 3, 3)).duration(90L)
+                .mpaRating(new MpaRating(1, "G"))
+                .build()).getId();
+        filmStorage.addLike(filmId2, userId1);
+        filmStorage.addLike(filmId3, userId1);
+        filmStorage.addLike(filmId3, userId2);
+
+        popularityIndex.rebuild(filmStorage.getLikesCountByFilm());
+        assertThat(popularityIndex.top(10)).containsExactlyElementsOf(popularIdsFromSql(10));
+
+        // инкрементальные изменения должны давать тот же порядок, что и SQL
+        for (Long userId : List.of(userId1, userId2, userId3)) {
+            if (filmStorage.addLike(filmId2, userId)) {
+                popularityIndex.adjust(filmId2, 1);
+            }
+        }
+        if (filmStorage.removeLike(filmId3, userId1)) {
+            popularityIndex.adjust(filmId3, -1);
+        }
+        assertThat(popularityIndex.likesOf(filmId2)).isEqualTo(3);
+        assertThat(popularityIndex.top(2)).containsExactly(filmId2, filmId3);
+        assertThat(popularityIndex.top(10)).containsExactlyElementsOf(popularIdsFromSql(10));
+        assertThat(filmStorage.findByIds(popularityIndex.top(2)))
+                .extracting(Film::getId)
+                .containsExactly(filmId2, filmId3);
+    }
+
+    @Test
+    void testApplyLikesBatch() {
+        filmStorage.addLike(filmId1, userId1);
+
+        Map<Long, Integer> deltas = filmStorage.applyLikes(
+                List.of(new FilmLike(filmId1, userId1), new FilmLike(filmId1, userId2), new FilmLike(filmId2, userId1)),
+                List.of(new FilmLike(filmId2, userId2)));
+
+        assertThat(deltas).containsOnly(Map.entry(filmId1, 1), Map.entry(filmId2, 1));
+        assertThat(filmStorage.getFilmById(filmId1)).get().hasFieldOrPropertyWithValue("likesCount", 2);
+        assertThat(filmStorage.getFilmById(filmId2)).get().hasFieldOrPropertyWithValue("likesCount", 1);
+        assertThat(filmStorage.reconcileLikesCount()).isZero();
+    }
+
+    @Test
+    void testLikeWriteBufferCoalescesAndCorrects() {
+        popularityIndex.rebuild(filmStorage.getLikesCountByFilm());
+        filmStorage.addLike(filmId2, userId2);
+        popularityIndex.adjust(filmId2, 1);
+        LikeWriteBuffer buffer = new LikeWriteBuffer(filmStorage, popularityIndex, true, 100, 100, false);
+        try {
+            // добавление, снятие и повторное добавление схлопываются в одно изменение
+            assertThat(buffer.add(filmId1, userId1)).isTrue();
+            assertThat(buffer.remove(filmId1, userId1)).isTrue();
+            assertThat(buffer.add(filmId1, userId1)).isTrue();
+            assertThat(buffer.add(filmId1, userId1)).isFalse();
+            // лайк уже есть в БД, но буфер об этом не знает и считает его новым
+            assertThat(buffer.add(filmId2, userId2)).isTrue();
+            assertThat(buffer.pendingCount()).isEqualTo(2);
+            assertThat(buffer.pendingDelta(filmId1)).isEqualTo(1);
+            assertThat(filmStorage.getFilmById(filmId1)).get().hasFieldOrPropertyWithValue("likesCount", 0);
+
+            buffer.flush();
+
+            assertThat(buffer.pendingCount()).isZero();
+            assertThat(buffer.pendingDelta(filmId1)).isZero();
+            assertThat(buffer.pendingDelta(filmId2)).isZero();
+            assertThat(filmStorage.getFilmById(filmId1)).get().hasFieldOrPropertyWithValue("likesCount", 1);
+            assertThat(filmStorage.getFilmById(filmId2)).get().hasFieldOrPropertyWithValue("likesCount", 1);
+            assertThat(popularityIndex.likesOf(filmId1)).isEqualTo(1);
+            assertThat(popularityIndex.likesOf(filmId2)).isEqualTo(1);
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    void testLikeWriteBufferSurvivesFilmDeletion() {
+        popularityIndex.rebuild(filmStorage.getLikesCountByFilm());
+        LikeWriteBuffer buffer = new LikeWriteBuffer(filmStorage, popularityIndex, true, 100, 100, false);
+        try {
+            // лайк попал в буфер после проверки существования, а фильм удалён до сброса
+            buffer.add(filmId1, userId1);
+            filmStorage.delete(filmId1);
+            buffer.add(filmId2, userId1);
+
+            buffer.flush();
+
+            assertThat(buffer.pendingCount()).isZero();
+            assertThat(filmStorage.getFilmById(filmId2)).get().hasFieldOrPropertyWithValue("likesCount", 1);
+            assertThat(filmStorage.reconcileLikesCount()).isZero();
+
+            // удаление через сервис отбрасывает отложенные лайки фильма
+            buffer.add(filmId2, userId2);
+            filmStorage.delete(filmId2);
+            buffer.discardFilm(filmId2);
+
+            assertThat(buffer.pendingCount()).isZero();
+            assertThat(buffer.pendingDelta(filmId2)).isZero();
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    private List<Long> popularIdsFromSql(int count) {
+        return filmStorage.getPopularFilms(count).stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    @Test
+    void testRecommendationsFromOverlappingLikes() {
+        List<Long> films = filmStorage.createAll(List.of(
+                Film.builder().name("F3").description("D3").releaseDate(LocalDate.of(2003, 3, 3))
+                        .duration(90L).mpaRating(new MpaRating(1, "G")).build(),
+                Film.builder().name("F4").description("D4").releaseDate(LocalDate.of(2004, 4, 4))
+                        .duration(90L).mpaRating(new MpaRating(1, "G")).build()))
+                .stream().map(Film::getId).toList();
+        Long userId3 = userStorage.create(User.builder()
+                .email("r3@mail.com").login("r3").birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        filmStorage.applyLikes(List.of(
+                new FilmLike(filmId1, userId1), new FilmLike(filmId2, userId1),
+                new FilmLike(filmId1, userId2), new FilmLike(filmId2, userId2), new FilmLike(films.get(0), userId2)),
+                List.of());
+
+        LikeMatrix.Loader loader = likeMatrix.loader();
+        filmStorage.streamLikes(like -> loader.add(like.getUserId(), like.getFilmId()));
+        loader.publish();
+
+        assertThat(likeMatrix.likesOf(userId2).size()).isEqualTo(3);
+        assertThat(likeMatrix.recommend(userId1, 10)).containsExactly(films.get(0));
+
+        // новый сосед с тем же пересечением попадает в закэшированных соседей без полного пересчёта
+        likeMatrix.like(userId3, filmId1);
+        likeMatrix.like(userId3, filmId2);
+        likeMatrix.like(userId3, films.get(1));
+        assertThat(likeMatrix.recommend(userId1, 10)).containsExactly(films.get(0), films.get(1));
+
+        likeMatrix.unlike(userId3, filmId2);
+        likeMatrix.unlike(userId3, filmId1);
+        assertThat(likeMatrix.recommend(userId1, 10)).containsExactly(films.get(0));
+        assertThat(likeMatrix.recommend(userId3, 10)).isEmpty();
+
+        // удалённый фильм не рекомендуется и не считается в пересечениях
+        likeMatrix.removeFilm(films.get(0));
+        assertThat(likeMatrix.likesOf(userId2).size()).isEqualTo(2);
+        assertThat(likeMatrix.recommend(userId1, 10)).isEmpty();
+
+        // память зависит от числа лайков, а не от разброса id
+        long[] sparse = new long[40];
+        for (int i = 0; i < sparse.length; i++) {
+            sparse[i] = (long) i << 30;
+        }
+        LikeSet wide = LikeSet.of(sparse, sparse.length);
+        assertThat(wide.size()).isEqualTo(40);
+        assertThat(wide.overlap(LikeSet.EMPTY.with(3L << 30).with(5))).isEqualTo(1);
+        assertThat(LikeSet.EMPTY.with(1L << 30).with(3L << 30).overlap(wide)).isEqualTo(2);
+    }
+
     @Test
     void testGenresAndMpaLoaded() {
         var allGenres = genreStorage.findAll();
@@ -199,6 +786,504 @@ class FilmRateApplicationTests {
         assertThat(allMpa).hasSizeGreaterThanOrEqualTo(2);
     }
 
+    @Test
+    void testMpaAndGenresResolvedFromDictionary() {
+        assertThat(mpaStorage.findById(3)).contains(new MpaRating(3, "PG-13"));
+        assertThat(mpaStorage.findById(3).orElseThrow()).isSameAs(mpaStorage.findById(3).orElseThrow());
+        assertThat(mpaStorage.findById(0)).isEmpty();
+        assertThat(mpaStorage.findById(100)).isEmpty();
+
+        assertThat(genreStorage.findById(6)).contains(new Genre(6, "Боевик"));
+        assertThat(genreStorage.findById(-1)).isEmpty();
+        assertThat(genreStorage.findAll())
+                .extracting(Genre::getId)
+                .containsExactly(1, 2, 3, 4, 5, 6);
+
+        // разреженные id не раздувают справочник и находятся так же
+        ReferenceDictionary<Genre> sparse = ReferenceDictionary.of(
+                List.of(new Genre(2_000_000_000, "Артхаус"), new Genre(1, "Комедия")), Genre::getId);
+        assertThat(sparse.find(2_000_000_000)).contains(new Genre(2_000_000_000, "Артхаус"));
+        assertThat(sparse.find(1)).contains(new Genre(1, "Комедия"));
+        assertThat(sparse.find(2)).isEmpty();
+        assertThat(sparse.values()).extracting(Genre::getId).containsExactly(1, 2_000_000_000);
+    }
+
+    @Test
+    void testStorageCallsAreTimedPerMethod() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AspectJProxyFactory factory = new AspectJProxyFactory(genreStorage);
+        factory.addAspect(new StorageMetricsAspect(registry));
+        GenreStorage timed = factory.getProxy();
+
+        timed.findAll();
+        timed.findAll();
+        timed.findById(1);
+
+        assertThat(registry.get(StorageMetricsAspect.METRIC)
+                .tags("storage", "GenreStorage", "method", "findAll", "exception", "none")
+                .timer().count()).isEqualTo(2);
+        assertThat(registry.get(StorageMetricsAspect.METRIC)
+                .tags("storage", "GenreStorage", "method", "findById")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testReplicaReadsAreRoutedUnlessPinnedToPrimary() {
+        DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:routing_primary");
+        DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:routing_replica");
+        AspectJProxyFactory factory = new AspectJProxyFactory(
+                new DatabaseNames(new JdbcTemplate(RoutingDataSource.of(primary, List.of(replica)))));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ReplicaReadAspect());
+        DatabaseNames routed = factory.getProxy();
+
+        // внутри транзакции теста все запросы идут в основную базу, поэтому остальное — в другом потоке
+        assertThat(routed.read()).isEqualToIgnoringCase("routing_primary");
+        CompletableFuture.runAsync(() -> {
+            try {
+                assertThat(routed.read()).isEqualToIgnoringCase("routing_replica");
+                assertThat(routed.write()).isEqualToIgnoringCase("routing_primary");
+                // промах кэша фильмов читается из основной базы, иначе отставшая реплика вернула бы старую строку
+                FilmCache cache = new FilmCache(entityVersions, true, 10, Duration.ofMinutes(1));
+                assertThat(routed.cachedRead(cache)).isEqualToIgnoringCase("routing_primary");
+                assertThat(routed.cachedReadAll(cache)).isEqualToIgnoringCase("routing_primary");
+                RoutingContext.pinToPrimary();
+                assertThat(routed.read()).isEqualToIgnoringCase("routing_primary");
+            } finally {
+                RoutingContext.clear();
+            }
+        }).join();
+    }
+
+    static class DatabaseNames {
+        private final JdbcTemplate jdbc;
+
+        DatabaseNames(JdbcTemplate jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        @ReplicaRead
+        public String read() {
+            return jdbc.queryForObject("SELECT DATABASE()", String.class);
+        }
+
+        public String write() {
+            return jdbc.queryForObject("SELECT DATABASE()", String.class);
+        }
+
+        @ReplicaRead
+        public String cachedRead(FilmCache cache) {
+            return cache.get(1L, id -> Optional.of(Film.builder().id(id).name(write()).build()))
+                    .orElseThrow().getName();
+        }
+
+        @ReplicaRead
+        public String cachedReadAll(FilmCache cache) {
+            return cache.getAll(List.of(2L), ids -> Map.of(2L, Film.builder().id(2L).name(write()).build()))
+                    .get(0).getName();
+        }
+    }
+
+    @Test
+    void testConcurrencyLimitRejectsAndReleasesPermits() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setMaximumPoolSize(1);
+            ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(pool, new ObjectMapper(), registry,
+                    true, 1, Duration.ofMillis(10));
+
+            // потоковый ответ пишется после выхода из фильтра и держит единственное разрешение до завершения
+            MockHttpServletRequest streaming = new MockHttpServletRequest("GET", "/films");
+            streaming.setAsyncSupported(true);
+            filter.doFilter(streaming, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+            MockHttpServletResponse rejected = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("GET", "/films/1"), rejected, new MockFilterChain());
+            assertThat(rejected.getStatus()).isEqualTo(503);
+            assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+            assertThat(registry.counter("filmorate.concurrency.rejected").count()).isEqualTo(1);
+
+            streaming.getAsyncContext().complete();
+            // синхронный запрос отпускает разрешение сразу, поэтому проходят оба
+            for (int i = 0; i < 2; i++) {
+                MockHttpServletResponse accepted = new MockHttpServletResponse();
+                filter.doFilter(new MockHttpServletRequest("GET", "/films/1"), accepted, new MockFilterChain());
+                assertThat(accepted.getStatus()).isEqualTo(200);
+            }
+            assertThat(registry.get("filmorate.concurrency.in.flight").gauge().value()).isZero();
+        }
+    }
+
+    @Test
+    void testHttpLogSamplingByRoute() {
+        HttpLogSampling sampling = new HttpLogSampling(
+                List.of("GET /films/**=0", "PUT /films/*/like/*=1"));
+
+        assertThat(sampling.test(httpRequest("GET", "/films/popular"))).isFalse();
+        assertThat(sampling.test(httpRequest("GET", "/films"))).isFalse();
+        assertThat(sampling.test(httpRequest("PUT", "/films/1/like/2"))).isTrue();
+        assertThat(sampling.test(httpRequest("POST", "/films"))).isTrue();
+        assertThat(sampling.test(httpRequest("GET", "/users/1"))).isTrue();
+        assertThatThrownBy(() -> new HttpLogSampling(List.of("GET /films=2")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HttpRequest httpRequest(String method, String path) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getPath()).thenReturn(path);
+        return request;
+    }
+
+    @Test
+    void testPageParametersAreValidatedTogether() throws Exception {
+        FilmService filmService = mock(FilmService.class);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new FilmController(filmService,
+                        new JsonArrayStreamer(new ObjectMapper()), new ConditionalGet(entityVersions)))
+                .setControllerAdvice(new ErrorHandler())
+                .build();
+
+        // after без limit не должен молча отдавать список с начала
+        mvc.perform(get("/films").param("after", "100"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/films").param("after", "100").param("limit", "5"))
+                .andExpect(status().isOk());
+
+        assertThatThrownBy(() -> PageValidator.validLimit(0)).isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> PageValidator.validLimit(PageValidator.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(ValidationException.class);
+        PageValidator.validLimit(PageValidator.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    void testIfModifiedSinceSeesChangesWithinTheSameSecond() throws Exception {
+        EntityVersions versions = new EntityVersions();
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+                new GenreController(new GenreServiceImpl(genreStorage), new ConditionalGet(versions))).build();
+
+        // Last-Modified появляется, когда секунда версии закончилась
+        CompletableFuture.runAsync(versions::genresChanged).join();
+        while (versions.lastModified(versions.genres()) < 0) {
+            Thread.sleep(20);
+        }
+        String lastModified = mvc.perform(get("/genres"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+        assertThat(lastModified).isNotNull();
+        mvc.perform(get("/genres").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isNotModified());
+
+        // изменение сразу после выдачи Last-Modified не даёт устаревшего 304
+        CompletableFuture.runAsync(versions::genresChanged).join();
+        mvc.perform(get("/genres").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isOk());
+        long version = versions.genres();
+        long current = versions.lastModified(version);
+        assertThat(current).isIn(-1L, Math.ceilDiv(version, 1000L) * 1000);
+    }
+
+    @Test
+    void testConditionalGetByEntityVersions() throws Exception {
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+                new GenreController(new GenreServiceImpl(genreStorage), new ConditionalGet(entityVersions))).build();
+        String etag = mvc.perform(get("/genres"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/genres").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // в транзакции теста версия фильма меняется только после фиксации
+        long before = entityVersions.film(filmId1);
+        filmStorage.addLike(filmId1, userId1);
+        assertThat(entityVersions.film(filmId1)).isEqualTo(before);
+        CompletableFuture.runAsync(() -> entityVersions.filmChanged(filmId1)).join();
+        assertThat(entityVersions.film(filmId1)).isGreaterThan(before);
+        assertThat(entityVersions.etag(entityVersions.film(filmId1))).isNotEqualTo(entityVersions.etag(before));
+    }
+
+    @Test
+    void testFilmCacheLoadsOnceAndReturnsCopies() {
+        Film film = filmStorage.getFilmById(filmId1).orElseThrow();
+        FilmCache cache = new FilmCache(new EntityVersions(), true, 100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Optional<Film>> loader = id -> {
+            loads.incrementAndGet();
+            return Optional.of(film);
+        };
+
+        // вне транзакции теста: внутри неё кэш не используется
+        CompletableFuture.runAsync(() -> {
+            cache.get(filmId1, loader).orElseThrow().setLikesCount(100);
+            assertThat(cache.get(filmId1, loader).orElseThrow().getLikesCount()).isEqualTo(film.getLikesCount());
+            assertThat(loads).hasValue(1);
+            assertThat(cache.getAll(List.of(filmId2, filmId1), ids -> Map.of()))
+                    .extracting(Film::getId).containsExactly(filmId1);
+
+            cache.invalidate(filmId1);
+            cache.get(filmId1, loader);
+            assertThat(loads).hasValue(2);
+        }).join();
+        assertThat(cache.cache().stats().hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testFilmCacheRejectsBulkLoadRacingWithUpdate() {
+        Film stale = filmStorage.getFilmById(filmId1).orElseThrow();
+        Film fresh = stale.toBuilder().name("Fresh").build();
+        EntityVersions versions = new EntityVersions();
+        FilmCache cache = new FilmCache(versions, true, 100, Duration.ofMinutes(1));
+
+        CompletableFuture.runAsync(() -> {
+            // пока пакетная загрузка читает старую строку, обновление фиксируется и сбрасывает запись
+            List<Film> loaded = cache.getAll(List.of(filmId1), ids -> {
+                versions.filmChanged(filmId1);
+                cache.invalidate(filmId1);
+                return Map.of(filmId1, stale);
+            });
+            assertThat(loaded).extracting(Film::getName).containsExactly(stale.getName());
+            assertThat(cache.cache().getIfPresent(filmId1)).isNull();
+
+            assertThat(cache.getAll(List.of(filmId1), ids -> Map.of(filmId1, fresh)))
+                    .extracting(Film::getName).containsExactly("Fresh");
+            assertThat(cache.getAll(List.of(filmId1), ids -> Map.of(filmId1, stale)))
+                    .extracting(Film::getName).containsExactly("Fresh");
+        }).join();
+    }
+
+    @Test
+    void testIdBitmapAndExistenceChecks() {
+        IdBitmap bitmap = new IdBitmap();
+        // больше 4096 значений в блоке — переход на битовую карту
+        for (long id = 1; id <= 5000; id++) {
+            bitmap.add(id * 3);
+        }
+        bitmap.add(70_000L);
+        bitmap.add(1L << 40);
+        assertThat(bitmap.contains(4998 * 3)).isTrue();
+        assertThat(bitmap.contains(4998 * 3 + 1)).isFalse();
+        assertThat(bitmap.remove(4998 * 3)).isTrue();
+        assertThat(bitmap.contains(4998 * 3)).isFalse();
+        assertThat(bitmap.contains(70_000L)).isTrue();
+        assertThat(bitmap.contains(1L << 40)).isTrue();
+        assertThat(bitmap.cardinality()).isEqualTo(5001);
+
+        IdBitmap.Loader loader = bitmap.loader();
+        loader.add(7L);
+        loader.publish();
+        assertThat(bitmap.contains(7L)).isTrue();
+        assertThat(bitmap.contains(70_000L)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(1);
+
+        assertThat(userStorage.exists(userId2)).isTrue();
+        assertThat(filmStorage.exists(filmId1)).isTrue();
+        assertThat(filmStorage.exists(999_999L)).isFalse();
+
+        filmStorage.addLike(filmId1, userId1);
+        filmStorage.delete(filmId1);
+        assertThat(filmStorage.exists(filmId1)).isFalse();
+        assertThat(filmStorage.getFilmById(filmId1)).isEmpty();
+        userStorage.delete(userId2);
+        assertThat(userStorage.exists(userId2)).isFalse();
+        assertThat(userStorage.findExistingIds(List.of(userId1, userId2))).containsExactly(userId1);
+
+        // вне транзакции теста: откат не должен менять множество id
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CompletableFuture.runAsync(() -> {
+            Long rolledBack = transaction.execute(status -> {
+                Long id = userStorage.create(User.builder().email("rollback@mail.com").login("rollback")
+                        .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+                assertThat(userStorage.exists(id)).isTrue();
+                status.setRollbackOnly();
+                return id;
+            });
+            assertThat(userStorage.exists(rolledBack)).isFalse();
+
+            Long committed = transaction.execute(status -> userStorage.create(User.builder()
+                    .email("committed@mail.com").login("committed").birthday(LocalDate.of(1990, 1, 1)).build())
+                    .getId());
+            assertThat(userStorage.exists(committed)).isTrue();
+            transaction.executeWithoutResult(status -> {
+                userStorage.delete(committed);
+                assertThat(userStorage.exists(committed)).isFalse();
+                status.setRollbackOnly();
+            });
+            assertThat(userStorage.exists(committed)).isTrue();
+            transaction.executeWithoutResult(status -> userStorage.delete(committed));
+            assertThat(userStorage.exists(committed)).isFalse();
+        }).join();
+    }
+
+    @Test
+    void testFilmSearchByPrefixBoostedByLikes() {
+        // поисковый индекс меняется после фиксации: фильм из незавершённой транзакции теста не ищется
+        filmStorage.create(Film.builder()
+                .name("Солярис")
+                .description("Черновик")
+                .releaseDate(LocalDate.of(1972, 3, 20))
+                .duration(166L)
+                .mpaRating(new MpaRating(1, "G"))
+                .build());
+        assertThat(searchIndex.search("солярис", 10)).isEmpty();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CompletableFuture.runAsync(() -> {
+            Film solaris = transaction.execute(status -> filmStorage.create(Film.builder()
+                    .name("Солярис")
+                    .description("Психолог прилетает на станцию над океаном")
+                    .releaseDate(LocalDate.of(1972, 3, 20))
+                    .duration(166L)
+                    .mpaRating(new MpaRating(1, "G"))
+                    .build()));
+            Film station = transaction.execute(status -> filmStorage.create(Film.builder()
+                    .name("Станция")
+                    .description("Ещё один фильм про океан и солярис")
+                    .releaseDate(LocalDate.of(1980, 1, 1))
+                    .duration(90L)
+                    .mpaRating(new MpaRating(1, "G"))
+                    .build()));
+
+            // совпадение в названии весит больше, чем в описании
+            assertThat(searchIndex.search("солярис", 10)).containsExactly(solaris.getId(), station.getId());
+            assertThat(searchIndex.search("СОЛЯР", 10)).containsExactly(solaris.getId(), station.getId());
+            // все слова запроса должны найтись
+            assertThat(searchIndex.search("солярис психолог", 10)).containsExactly(solaris.getId());
+            assertThat(searchIndex.search("еще океан", 10)).containsExactly(station.getId());
+
+            popularityIndex.adjust(station.getId(), 1000);
+            assertThat(searchIndex.search("океан", 10)).startsWith(station.getId());
+            popularityIndex.remove(station.getId());
+
+            // откаченные обновление и удаление не меняют индекс
+            transaction.executeWithoutResult(status -> {
+                filmStorage.update(station.toBuilder().name("Зеркало").build());
+                filmStorage.delete(solaris.getId());
+                status.setRollbackOnly();
+            });
+            assertThat(searchIndex.search("зеркало", 10)).isEmpty();
+            assertThat(searchIndex.search("солярис", 10)).containsExactly(solaris.getId(), station.getId());
+
+            station.setName("Сталкер");
+            transaction.executeWithoutResult(status -> filmStorage.update(station));
+            assertThat(searchIndex.search("станц", 10)).containsExactly(solaris.getId());
+            assertThat(searchIndex.search("сталкер", 10)).containsExactly(station.getId());
+
+            transaction.executeWithoutResult(status -> filmStorage.delete(solaris.getId()));
+            assertThat(searchIndex.search("солярис", 10)).containsExactly(station.getId());
+            transaction.executeWithoutResult(status -> filmStorage.delete(station.getId()));
+        }).join();
+    }
+
+    @Test
+    void testFilmSearchBoundsCandidatesForCommonWords() {
+        PopularityIndex popularity = new PopularityIndex();
+        FilmSearchIndex bounded = new FilmSearchIndex(popularity, 3, 64, 10);
+        FilmSearchIndex exhaustive = new FilmSearchIndex(popularity, 3, 64, 1000);
+        for (long id = 1; id <= 50; id++) {
+            for (FilmSearchIndex index : List.of(bounded, exhaustive)) {
+                index.index(id, "Картина " + id, "Обычный фильм номер " + id);
+            }
+            popularity.register(id, 2000, new int[0]);
+            popularity.adjust(id, (int) id);
+        }
+        bounded.index(51, "Фильм", "Без лайков");
+        popularity.register(51, 2000, new int[0]);
+
+        // слово есть во всех фильмах: кандидаты берутся по лайкам, топ совпадает с полным перебором
+        assertThat(bounded.search("фильм", 3)).containsExactly(exhaustive.search("фильм", 3));
+        assertThat(bounded.search("обычн фильм", 3)).containsExactly(50L, 49L, 48L);
+        // проверяется не больше max-candidates фильмов: фильм без лайков до них не доходит
+        assertThat(bounded.search("фильм", 100)).hasSize(10).doesNotContain(51L);
+        // редкое слово ищется по своему списку вхождений
+        assertThat(bounded.search("фильм лайков", 3)).containsExactly(51L);
+    }
+
+    @Test
+    void testFilmIndexesLoadYearAndGenresInOnePass() {
+        Film film3 = filmStorage.create(Film.builder()
+                .name("Film3")
+                .description("Desc3")
+                .releaseDate(LocalDate.of(2010, 5, 5))
+                .duration(90L)
+                .mpaRating(new MpaRating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))))
+                .build());
+        filmStorage.addLike(filmId2, userId1);
+
+        PopularityIndex loaded = new PopularityIndex();
+        FilmRepository repository = new FilmRepository(jdbcTemplate, filmRowMapper, filmResultSetExtractor,
+                entityVersions, new FilmCache(entityVersions, false, 1, Duration.ZERO),
+                new FilmSearchIndex(loaded, 3, 64, 10_000), loaded);
+        SqlProfile load = sqlProfiler.profile(repository::loadIndexes);
+
+        // счётчики лайков и один проход по фильмам с жанрами
+        assertThat(load.statements()).isEqualTo(2);
+        assertThat(repository.exists(film3.getId())).isTrue();
+        assertThat(loaded.top(10, 1, 2010)).containsExactly(film3.getId());
+        assertThat(loaded.top(10, 2, null)).containsExactly(filmId2, film3.getId());
+        assertThat(loaded.top(10, null, 2000)).containsExactly(filmId1);
+        assertThat(loaded.likesOf(filmId2)).isEqualTo(1);
+
+        PopularityIndex registered = new PopularityIndex();
+        registered.register(film3);
+        assertThat(registered.top(10, 2, 2010)).containsExactly(film3.getId());
+    }
+
+    @Test
+    void testPopularityByGenreAndYear() {
+        popularityIndex.rebuild(filmStorage.getLikesCountByFilm());
+        Long filmId3 = filmStorage.create(Film.builder()
+                .name("Film3")
+                .description("Desc3")
+                .releaseDate(LocalDate.of(2010, 5, 5))
+                .duration(90L)
+                .mpaRating(new MpaRating(1, "G"))
+                .genres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))))
+                .build()).getId();
+        popularityIndex.register(filmId1, 2000, new int[]{1});
+        popularityIndex.register(filmId2, 2010, new int[]{2});
+        popularityIndex.register(filmId3, 2010, new int[]{1, 2});
+        popularityIndex.adjust(filmId1, 3);
+        popularityIndex.adjust(filmId2, 2);
+        popularityIndex.adjust(filmId3, 1);
+
+        assertThat(popularityIndex.top(10, 1, null)).containsExactly(filmId1, filmId3);
+        assertThat(popularityIndex.top(10, null, 2010)).containsExactly(filmId2, filmId3);
+        assertThat(popularityIndex.top(10, 1, 2010)).containsExactly(filmId3);
+        assertThat(popularityIndex.top(10, 3, 2010)).isEmpty();
+
+        // лайк и смена жанров переставляют фильм в рейтингах жанров и года
+        popularityIndex.adjust(filmId3, 5);
+        assertThat(popularityIndex.top(1, 2, null)).containsExactly(filmId3);
+        popularityIndex.register(filmId3, 2000, new int[]{3});
+        assertThat(popularityIndex.top(10, 2, null)).containsExactly(filmId2);
+        assertThat(popularityIndex.top(10, null, 2000)).containsExactly(filmId3, filmId1);
+        assertThat(popularityIndex.likesOf(filmId3)).isEqualTo(6);
+
+        popularityIndex.remove(filmId3);
+        assertThat(popularityIndex.top(10, 3, null)).isEmpty();
+
+        // запоздавшие изменения удалённого фильма не возвращают его в рейтинги
+        popularityIndex.adjust(filmId3, 10);
+        popularityIndex.register(filmId3, 2000, new int[]{3});
+        assertThat(popularityIndex.top(10)).doesNotContain(filmId3);
+        assertThat(popularityIndex.top(10, 3, 2000)).isEmpty();
+        assertThat(popularityIndex.likesOf(filmId3)).isZero();
+
+        // удаление неизвестного фильма не оставляет пометки, и фильм потом добавляется как обычно
+        popularityIndex.remove(-1L);
+        popularityIndex.adjust(-1L, 1);
+        assertThat(popularityIndex.likesOf(-1L)).isEqualTo(1);
+
+        // перестройка снимает пометку об удалении и сохраняет год и жанры живых фильмов
+        popularityIndex.rebuild(Map.of(filmId1, 0, filmId3, 2));
+        assertThat(popularityIndex.likesOf(filmId3)).isEqualTo(2);
+        assertThat(popularityIndex.likesOf(-1L)).isZero();
+        assertThat(popularityIndex.top(10, 1, 2000)).containsExactly(filmId1);
+    }
+
     @Test
     void getAllMpa_returnsNonEmptyList() {
         Collection<MpaRating> list = mpaStorage.findAll();